@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.opentracing;
+
+import brave.Span;
+import brave.Tracer.SpanInScope;
+import io.opentracing.Scope;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.runner.RunnerException;
+
+/** Measures {@code BraveScopeManager.activate} and {@code BraveScopeManager.activeSpan}. */
+public class BraveScopeManagerBenchmarks extends BridgeBenchmarks {
+  BraveSpan span;
+  Span braveSpan;
+
+  @Override void setup() {
+    span = tracer.buildSpan("encode").start();
+    braveSpan = span.unwrap();
+  }
+
+  @Benchmark public void activate_close() {
+    try (Scope scope = tracer.scopeManager().activate(span)) {
+    }
+  }
+
+  @Benchmark public void brave_withSpanInScope_close() {
+    try (SpanInScope ws = brave.withSpanInScope(braveSpan)) {
+    }
+  }
+
+  @Benchmark public BraveSpan activeSpan() {
+    try (Scope scope = tracer.scopeManager().activate(span)) {
+      return tracer.scopeManager().activeSpan();
+    }
+  }
+
+  @Benchmark public Span brave_currentSpan() {
+    try (SpanInScope ws = brave.withSpanInScope(braveSpan)) {
+      return brave.currentSpan();
+    }
+  }
+
+  @Benchmark public BraveSpan activeSpan_none() {
+    return tracer.scopeManager().activeSpan();
+  }
+
+  @Benchmark public Span brave_currentSpan_none() {
+    return brave.currentSpan();
+  }
+
+  /** Instrumentation often looks up the active span several times per request. */
+  @Benchmark public void activeSpan_repeated() {
+    try (Scope scope = tracer.scopeManager().activate(span)) {
+      for (int i = 0; i < 5; i++) {
+        tracer.activeSpan().setTag("iteration", i);
+      }
+    }
+  }
+
+  @Benchmark public void brave_currentSpan_repeated() {
+    try (SpanInScope ws = brave.withSpanInScope(braveSpan)) {
+      for (int i = 0; i < 5; i++) {
+        brave.currentSpan().tag("iteration", String.valueOf(i));
+      }
+    }
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    run(BraveScopeManagerBenchmarks.class);
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.opentracing;
+
+import brave.Span;
+import io.opentracing.tag.Tags;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.runner.RunnerException;
+
+/**
+ * Measures {@link BraveSpan} operations. Each benchmark starts and finishes a span, so subtract
+ * {@link #start_finish()} or {@link #brave_start_finish()} to isolate the cost of the operation.
+ */
+public class BraveSpanBenchmarks extends BridgeBenchmarks {
+  final Map<String, Object> fields = new LinkedHashMap<>();
+  /** Never finished, so that tagging cost is measured without the span lifecycle. */
+  BraveSpan startedSpan;
+  Span startedBraveSpan;
+
+  @Override void setup() {
+    startedSpan = newSpan();
+    startedBraveSpan = newBraveSpan();
+    startedSpan.setBaggageItem("country-code", "FO"); // only set with TracingType.BAGGAGE
+    fields.put("event", "error");
+    fields.put("error.kind", "IllegalStateException");
+    fields.put("message", "connection refused");
+  }
+
+  @Benchmark public void start_finish() {
+    newSpan().finish();
+  }
+
+  @Benchmark public void brave_start_finish() {
+    newBraveSpan().finish();
+  }
+
+  @Benchmark public void setTag_string() {
+    BraveSpan span = newSpan();
+    span.setTag("http.url", "/api/v2/traces");
+    span.finish();
+  }
+
+  @Benchmark public void brave_tag() {
+    Span span = newBraveSpan();
+    span.tag("http.url", "/api/v2/traces");
+    span.finish();
+  }
+
+  @Benchmark public BraveSpan setTag_string_startedSpan() {
+    return startedSpan.setTag("http.url", "/api/v2/traces");
+  }
+
+  @Benchmark public BraveSpan setTag_stringTag_startedSpan() {
+    return startedSpan.setTag(Tags.HTTP_URL, "/api/v2/traces");
+  }
+
+  @Benchmark public BraveSpan setTag_number_startedSpan() {
+    return startedSpan.setTag("http.status_code", 200);
+  }
+
+  /** Like enriching a log statement with baggage. */
+  @Benchmark public int baggageItems_startedSpan() {
+    int count = 0;
+    for (Map.Entry<String, String> entry : startedSpan.context().baggageItems()) {
+      count += entry.getValue().length();
+    }
+    return count;
+  }
+
+  @Benchmark public String getBaggageItem_startedSpan() {
+    return startedSpan.getBaggageItem("country-code");
+  }
+
+  @Benchmark public Span brave_tag_startedSpan() {
+    return startedBraveSpan.tag("http.url", "/api/v2/traces");
+  }
+
+  @Benchmark public void setTag_number() {
+    BraveSpan span = newSpan();
+    span.setTag("http.status_code", 200);
+    span.finish();
+  }
+
+  @Benchmark public void brave_tag_number() {
+    Span span = newBraveSpan();
+    span.tag("http.status_code", String.valueOf(200));
+    span.finish();
+  }
+
+  @Benchmark public void setTag_boolean() {
+    BraveSpan span = newSpan();
+    span.setTag("cache.hit", true);
+    span.finish();
+  }
+
+  @Benchmark public void brave_tag_boolean() {
+    Span span = newBraveSpan();
+    span.tag("cache.hit", Boolean.toString(true));
+    span.finish();
+  }
+
+  @Benchmark public void setTag_kind() {
+    BraveSpan span = newSpan();
+    span.setTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_CLIENT);
+    span.finish();
+  }
+
+  @Benchmark public void brave_kind() {
+    Span span = newBraveSpan();
+    span.kind(Span.Kind.CLIENT);
+    span.finish();
+  }
+
+  @Benchmark public void setTag_peer() {
+    BraveSpan span = newSpan();
+    span.setTag(Tags.PEER_HOST_IPV4.getKey(), 0x7f000001);
+    span.setTag(Tags.PEER_PORT.getKey(), 8080);
+    span.finish();
+  }
+
+  @Benchmark public void brave_remoteIpAndPort() {
+    Span span = newBraveSpan();
+    span.remoteIpAndPort("127.0.0.1", 8080);
+    span.finish();
+  }
+
+  @Benchmark public void log_event() {
+    BraveSpan span = newSpan();
+    span.log("retry");
+    span.finish();
+  }
+
+  @Benchmark public void brave_annotate() {
+    Span span = newBraveSpan();
+    span.annotate("retry");
+    span.finish();
+  }
+
+  @Benchmark public void log_fields() {
+    BraveSpan span = newSpan();
+    span.log(fields);
+    span.finish();
+  }
+
+  BraveSpan newSpan() {
+    return BraveSpan.create(tracing, LogFieldsFormatter.DEFAULT, new BraveTracerMetrics(),
+        newBraveSpan(), true);
+  }
+
+  Span newBraveSpan() {
+    return brave.nextSpan().name("encode").start();
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    run(BraveSpanBenchmarks.class);
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.opentracing;
+
+import brave.Span;
+import brave.Tracer.SpanInScope;
+import io.opentracing.tag.Tags;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.runner.RunnerException;
+
+/** Measures {@code BraveTracer.buildSpan(...).start()}, including finishing the result. */
+public class BraveSpanBuilderBenchmarks extends BridgeBenchmarks {
+  BraveSpan parent;
+  Span braveParent;
+
+  @Override void setup() {
+    parent = tracer.buildSpan("parent").start();
+    braveParent = parent.unwrap();
+  }
+
+  @Benchmark public void buildSpan_start_finish() {
+    tracer.buildSpan("encode").start().finish();
+  }
+
+  @Benchmark public void brave_nextSpan_start_finish() {
+    brave.nextSpan().name("encode").start().finish();
+  }
+
+  @Benchmark public void buildSpan_withTags_start_finish() {
+    tracer.buildSpan("get")
+        .withTag(Tags.SPAN_KIND, Tags.SPAN_KIND_CLIENT)
+        .withTag(Tags.PEER_SERVICE, "backend")
+        .withTag(Tags.PEER_PORT, 8080)
+        .withTag(Tags.HTTP_METHOD, "GET")
+        .withTag(Tags.HTTP_URL, "/api/v2/traces")
+        .start().finish();
+  }
+
+  @Benchmark public void brave_nextSpan_withTags_start_finish() {
+    brave.nextSpan().name("get")
+        .kind(Span.Kind.CLIENT)
+        .remoteServiceName("backend")
+        .tag("http.method", "GET")
+        .tag("http.url", "/api/v2/traces")
+        .start().finish();
+  }
+
+  @Benchmark public void buildSpan_asChildOf_start_finish() {
+    tracer.buildSpan("encode").asChildOf(parent).start().finish();
+  }
+
+  @Benchmark public void brave_newChild_start_finish() {
+    brave.newChild(braveParent.context()).name("encode").start().finish();
+  }
+
+  @Benchmark public void buildSpan_activeParent_start_finish() {
+    try (SpanInScope ws = brave.withSpanInScope(braveParent)) {
+      tracer.buildSpan("encode").start().finish();
+    }
+  }
+
+  @Benchmark public void brave_nextSpan_activeParent_start_finish() {
+    try (SpanInScope ws = brave.withSpanInScope(braveParent)) {
+      brave.nextSpan().name("encode").start().finish();
+    }
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    run(BraveSpanBuilderBenchmarks.class);
+  }
+}
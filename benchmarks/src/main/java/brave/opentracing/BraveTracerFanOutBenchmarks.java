@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.opentracing;
+
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMapAdapter;
+import io.opentracing.tag.Tags;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.runner.RunnerException;
+
+/** Compares {@code BraveTracer.startAndInject} with starting and injecting spans in a loop. */
+public class BraveTracerFanOutBenchmarks extends BridgeBenchmarks {
+  @Param({"10", "100", "1000"}) public int fanOut;
+
+  BraveSpan parent;
+  final List<Map<String, String>> maps = new ArrayList<>();
+  final List<TextMapAdapter> carriers = new ArrayList<>();
+  final List<BraveSpan> spans = new ArrayList<>();
+
+  @Override void setup() {
+    parent = tracer.buildSpan("scatter").start();
+    parent.unwrap().abandon();
+    for (int i = 0; i < fanOut; i++) {
+      Map<String, String> map = new LinkedHashMap<>();
+      maps.add(map);
+      carriers.add(new TextMapAdapter(map));
+    }
+  }
+
+  @Benchmark public List<BraveSpan> startAndInject_loop() {
+    clearCarriers();
+    spans.clear();
+    try (BraveScope scope = tracer.activateSpan(parent)) {
+      for (TextMapAdapter carrier : carriers) {
+        BraveSpan span = tracer.buildSpan("gather")
+            .withTag(Tags.SPAN_KIND, Tags.SPAN_KIND_CLIENT)
+            .withTag(Tags.PEER_SERVICE, "backend")
+            .withTag(Tags.COMPONENT, "scatter-gather")
+            .start();
+        tracer.inject(span.context(), Format.Builtin.HTTP_HEADERS, carrier);
+        spans.add(span);
+      }
+    }
+    return abandon(spans);
+  }
+
+  @Benchmark public List<BraveSpan> startAndInject() {
+    clearCarriers();
+    List<BraveSpan> result;
+    try (BraveScope scope = tracer.activateSpan(parent)) {
+      result = tracer.startAndInject(tracer.buildSpan("gather")
+          .withTag(Tags.PEER_SERVICE, "backend")
+          .withTag(Tags.COMPONENT, "scatter-gather"), Format.Builtin.HTTP_HEADERS, carriers);
+    }
+    return abandon(result);
+  }
+
+  void clearCarriers() {
+    for (Map<String, String> map : maps) map.clear();
+  }
+
+  /** Abandons spans, so that the benchmark doesn't include reporting. */
+  static List<BraveSpan> abandon(List<BraveSpan> spans) {
+    for (BraveSpan span : spans) span.unwrap().abandon();
+    return spans;
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    run(BraveTracerFanOutBenchmarks.class);
+  }
+}
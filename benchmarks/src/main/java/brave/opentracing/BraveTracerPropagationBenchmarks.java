@@ -0,0 +1,242 @@
+/*
+ * Copyright 2016-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.opentracing;
+
+import brave.Span;
+import brave.propagation.B3SingleFormat;
+import brave.propagation.TraceContext;
+import brave.propagation.TraceContextOrSamplingFlags;
+import io.opentracing.propagation.BinaryAdapters;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMap;
+import io.opentracing.propagation.TextMapAdapter;
+import io.opentracing.tag.Tags;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.runner.RunnerException;
+
+/** Measures {@code BraveTracer.inject} and {@code BraveTracer.extract}. */
+public class BraveTracerPropagationBenchmarks extends BridgeBenchmarks {
+  static final Format<TextMap> CUSTOM_FORMAT = new Format<TextMap>() {
+    @Override public String toString() {
+      return "CUSTOM_FORMAT";
+    }
+  };
+
+  BraveTracer customFormatTracer, compactBinaryTracer, extractionCacheTracer;
+  BraveSpanContext context, clientContext, producerContext;
+  TraceContext braveContext;
+  TraceContext.Injector<Map<String, String>> braveInjector, braveClientInjector;
+  TraceContext.Extractor<Map<String, String>> braveExtractor;
+
+  final Map<String, String> injected = new LinkedHashMap<>();
+  final Map<String, String> incoming = new LinkedHashMap<>();
+  final Map<String, String> incomingNoContext = new LinkedHashMap<>();
+  final Map<String, String> incomingLowerCase = new LinkedHashMap<>();
+  final ByteBuffer binary = ByteBuffer.allocate(128);
+  ByteBuffer incomingBinary, incomingCompactBinary;
+  /** Records of a consumer poll, where every other record has a trace context. */
+  final List<TextMapAdapter> incomingBatch = new ArrayList<>();
+  final BraveSpanContext[] extractedBatch = new BraveSpanContext[100];
+  String incomingB3Single;
+
+  @Override void setup() {
+    customFormatTracer = BraveTracer.newBuilder(tracing)
+        .textMapPropagation(CUSTOM_FORMAT, tracing.propagation())
+        .build();
+    compactBinaryTracer = BraveTracer.newBuilder(tracing)
+        .binaryPropagation(Format.Builtin.BINARY)
+        .build();
+    extractionCacheTracer = BraveTracer.newBuilder(tracing).extractionCacheSize(1024).build();
+
+    // typical request headers unrelated to tracing
+    incomingNoContext.put("Host", "api.zipkin.io");
+    incomingNoContext.put("User-Agent", "okhttp/3.14.9");
+    incomingNoContext.put("Accept", "application/json");
+    incomingNoContext.put("Accept-Encoding", "gzip");
+    incomingNoContext.put("Connection", "keep-alive");
+    incomingNoContext.put("Content-Type", "application/json");
+    incomingNoContext.put("Content-Length", "1024");
+    incomingNoContext.put("X-Forwarded-For", "192.168.99.100");
+
+    Span span = brave.nextSpan().start();
+    braveContext = span.context();
+    span.abandon();
+    if (tracingType == TracingType.BAGGAGE) {
+      TracingType.COUNTRY_CODE.updateValue(braveContext, "FO");
+    }
+
+    context = BraveSpanContext.create(braveContext);
+    clientContext = BraveSpanContext.create(braveContext);
+    clientContext.kind = Span.Kind.CLIENT;
+    producerContext = BraveSpanContext.create(braveContext);
+    producerContext.kind = Span.Kind.PRODUCER;
+
+    braveInjector = tracing.propagation().injector(Map::put);
+    braveClientInjector = tracing.propagation().injector(new ClientSetter());
+    braveExtractor = tracing.propagation().extractor(Map::get);
+
+    incoming.putAll(incomingNoContext);
+    // incoming headers usually aren't lowercase
+    incoming.put("X-B3-TraceId", braveContext.traceIdString());
+    incoming.put("X-B3-SpanId", braveContext.spanIdString());
+    incoming.put("X-B3-Sampled", braveContext.sampled() ? "1" : "0");
+    if (tracingType == TracingType.BAGGAGE) incoming.put("Country-Code", "FO");
+
+    for (Map.Entry<String, String> entry : incoming.entrySet()) {
+      incomingLowerCase.put(entry.getKey().toLowerCase(Locale.ROOT), entry.getValue());
+    }
+
+    for (int i = 0; i < extractedBatch.length; i++) {
+      incomingBatch.add(new TextMapAdapter(i % 2 == 0 ? incoming : incomingNoContext));
+    }
+
+    incomingB3Single = B3SingleFormat.writeB3SingleFormat(braveContext);
+    incomingBinary = ByteBuffer.wrap(B3SingleFormat.writeB3SingleFormatAsBytes(braveContext));
+    incomingCompactBinary = ByteBuffer.allocate(128);
+    compactBinaryTracer.inject(context, Format.Builtin.BINARY_INJECT,
+        BinaryAdapters.injectionCarrier(incomingCompactBinary));
+    incomingCompactBinary.flip();
+  }
+
+  @Benchmark public Map<String, String> inject_textMap() {
+    injected.clear();
+    tracer.inject(context, Format.Builtin.HTTP_HEADERS, new TextMapAdapter(injected));
+    return injected;
+  }
+
+  @Benchmark public Map<String, String> inject_textMap_client() {
+    injected.clear();
+    tracer.inject(clientContext, Format.Builtin.HTTP_HEADERS, new TextMapAdapter(injected));
+    return injected;
+  }
+
+  /** Producers inject B3 single format, which is encoded into a new string each time. */
+  @Benchmark public Map<String, String> inject_textMap_producer() {
+    injected.clear();
+    tracer.inject(producerContext, Format.Builtin.HTTP_HEADERS, new TextMapAdapter(injected));
+    return injected;
+  }
+
+  @Benchmark public Map<String, String> inject_textMapInject_client() {
+    injected.clear();
+    tracer.inject(clientContext, Format.Builtin.TEXT_MAP_INJECT, new TextMapAdapter(injected));
+    return injected;
+  }
+
+  @Benchmark public Map<String, String> inject_customFormat_client() {
+    injected.clear();
+    customFormatTracer.inject(clientContext, CUSTOM_FORMAT, new TextMapAdapter(injected));
+    return injected;
+  }
+
+  @Benchmark public Map<String, String> brave_inject() {
+    injected.clear();
+    braveInjector.inject(braveContext, injected);
+    return injected;
+  }
+
+  @Benchmark public Map<String, String> brave_inject_client() {
+    injected.clear();
+    braveClientInjector.inject(braveContext, injected);
+    return injected;
+  }
+
+  @Benchmark public BraveSpanContext extract_textMap() {
+    return tracer.extract(Format.Builtin.HTTP_HEADERS, new TextMapAdapter(incoming));
+  }
+
+  /** Baggage isn't cached, so this is only faster without it. */
+  @Benchmark public BraveSpanContext extract_textMap_cached() {
+    return extractionCacheTracer.extract(Format.Builtin.HTTP_HEADERS, new TextMapAdapter(incoming));
+  }
+
+  @Benchmark public BraveSpanContext extract_textMap_noContext() {
+    return tracer.extract(Format.Builtin.HTTP_HEADERS, new TextMapAdapter(incomingNoContext));
+  }
+
+  @Benchmark public BraveSpanContext[] extract_textMap_batch() {
+    for (int i = 0; i < extractedBatch.length; i++) {
+      extractedBatch[i] = tracer.extract(Format.Builtin.HTTP_HEADERS, incomingBatch.get(i));
+    }
+    return extractedBatch;
+  }
+
+  @Benchmark public List<BraveSpanContext> extractAll_textMap_batch() {
+    return tracer.extractAll(Format.Builtin.HTTP_HEADERS, incomingBatch);
+  }
+
+  /** Brave's getter is case-sensitive, so this is given lowercase keys. */
+  @Benchmark public TraceContextOrSamplingFlags brave_extract() {
+    return braveExtractor.extract(incomingLowerCase);
+  }
+
+  @Benchmark public TraceContextOrSamplingFlags brave_extract_noContext() {
+    return braveExtractor.extract(incomingNoContext);
+  }
+
+  @Benchmark public ByteBuffer inject_binary() {
+    binary.clear();
+    tracer.inject(context, Format.Builtin.BINARY_INJECT, BinaryAdapters.injectionCarrier(binary));
+    return binary;
+  }
+
+  @Benchmark public ByteBuffer inject_binary_compact() {
+    binary.clear();
+    compactBinaryTracer.inject(context, Format.Builtin.BINARY_INJECT,
+        BinaryAdapters.injectionCarrier(binary));
+    return binary;
+  }
+
+  @Benchmark public byte[] brave_inject_b3SingleBytes() {
+    return B3SingleFormat.writeB3SingleFormatAsBytes(braveContext);
+  }
+
+  @Benchmark public BraveSpanContext extract_binary() {
+    incomingBinary.rewind();
+    return tracer.extract(Format.Builtin.BINARY_EXTRACT,
+        BinaryAdapters.extractionCarrier(incomingBinary));
+  }
+
+  @Benchmark public BraveSpanContext extract_binary_compact() {
+    incomingCompactBinary.rewind();
+    return compactBinaryTracer.extract(Format.Builtin.BINARY_EXTRACT,
+        BinaryAdapters.extractionCarrier(incomingCompactBinary));
+  }
+
+  @Benchmark public TraceContextOrSamplingFlags brave_extract_b3Single() {
+    return B3SingleFormat.parseB3SingleFormat(incomingB3Single);
+  }
+
+  static final class ClientSetter
+      implements brave.propagation.Propagation.RemoteSetter<Map<String, String>> {
+    @Override public Span.Kind spanKind() {
+      return Span.Kind.CLIENT;
+    }
+
+    @Override public void put(Map<String, String> request, String key, String value) {
+      request.put(key, value);
+    }
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    run(BraveTracerPropagationBenchmarks.class);
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.opentracing;
+
+import brave.Tracing;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Base class for benchmarks that compare the OpenTracing bridge with the equivalent native Brave
+ * call. Native baselines are named with the prefix "brave_".
+ */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public abstract class BridgeBenchmarks {
+  @Param public TracingType tracingType;
+
+  Tracing tracing;
+  brave.Tracer brave;
+  BraveTracer tracer;
+
+  @Setup(Level.Trial) public void setupTracing() {
+    tracing = tracingType.build();
+    brave = tracing.tracer();
+    tracer = BraveTracer.create(tracing);
+    setup();
+  }
+
+  /** Override to initialize state that depends on {@link #tracer}. */
+  void setup() {
+  }
+
+  @TearDown(Level.Trial) public void closeTracing() {
+    tracing.close();
+  }
+
+  /** Runs the benchmark class with the gc profiler, which reports bytes allocated per operation. */
+  static void run(Class<? extends BridgeBenchmarks> benchmarkClass) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .addProfiler("gc")
+        .include(".*" + benchmarkClass.getSimpleName())
+        .build();
+
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.opentracing;
+
+import brave.Tracing;
+import brave.baggage.BaggageField;
+import brave.baggage.BaggagePropagation;
+import brave.baggage.BaggagePropagationConfig.SingleBaggageField;
+import brave.handler.MutableSpan;
+import brave.handler.SpanHandler;
+import brave.propagation.B3Propagation;
+import brave.propagation.TraceContext;
+import brave.sampler.Sampler;
+
+/** Configurations of {@link Tracing} that affect the cost of the bridge. */
+public enum TracingType {
+  /** All spans are recorded. */
+  SAMPLED {
+    @Override Tracing.Builder configure(Tracing.Builder builder) {
+      return builder.sampler(Sampler.ALWAYS_SAMPLE);
+    }
+  },
+  /** No spans are recorded. */
+  UNSAMPLED {
+    @Override Tracing.Builder configure(Tracing.Builder builder) {
+      return builder.sampler(Sampler.NEVER_SAMPLE);
+    }
+  },
+  /** All spans are recorded and {@link #COUNTRY_CODE} is propagated remotely. */
+  BAGGAGE {
+    @Override Tracing.Builder configure(Tracing.Builder builder) {
+      return builder.sampler(Sampler.ALWAYS_SAMPLE)
+          .propagationFactory(BaggagePropagation.newFactoryBuilder(B3Propagation.FACTORY)
+              .add(SingleBaggageField.remote(COUNTRY_CODE))
+              .build());
+    }
+  };
+
+  static final BaggageField COUNTRY_CODE = BaggageField.create("country-code");
+
+  /** Drops spans, but ensures they are recorded when sampled. */
+  static final SpanHandler NOOP_HANDLER = new SpanHandler() {
+    @Override public boolean end(TraceContext context, MutableSpan span, Cause cause) {
+      return true;
+    }
+
+    @Override public String toString() {
+      return "NoopSpanHandler{}";
+    }
+  };
+
+  abstract Tracing.Builder configure(Tracing.Builder builder);
+
+  Tracing build() {
+    return configure(Tracing.newBuilder().addSpanHandler(NOOP_HANDLER)).build();
+  }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2016-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.opentracing;
+
+import brave.baggage.BaggageField;
+import brave.internal.Nullable;
+import brave.propagation.B3SingleFormat;
+import brave.propagation.Propagation;
+import brave.propagation.TraceContext;
+import brave.propagation.TraceContext.Extractor;
+import brave.propagation.TraceContext.Injector;
+import brave.propagation.TraceContextOrSamplingFlags;
+import io.opentracing.propagation.BinaryExtract;
+import io.opentracing.propagation.BinaryInject;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+final class BinaryPropagation {
+  static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  interface BinaryCodec extends Injector<BinaryInject>, Extractor<BinaryExtract> {
+    /**
+     * Like {@link Extractor#extract(Object)}, except this returns null when the input is malformed,
+     * as opposed to empty.
+     */
+    @Nullable TraceContextOrSamplingFlags extractOrNull(BinaryExtract binaryExtract);
+  }
+
+  /**
+   * Reads and writes B3 single format directly from the carrier's buffer, whether it is heap or
+   * direct, without intermediate arrays.
+   */
+  // Temporary until https://github.com/openzipkin/brave/issues/928
+  enum B3SingleCodec implements BinaryCodec {
+    INSTANCE;
+
+    static final byte[] HEX_DIGITS =
+        {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+    @Override public TraceContextOrSamplingFlags extract(BinaryExtract binaryExtract) {
+      TraceContextOrSamplingFlags result = extractOrNull(binaryExtract);
+      return result != null ? result : TraceContextOrSamplingFlags.EMPTY;
+    }
+
+    @Override public TraceContextOrSamplingFlags extractOrNull(BinaryExtract binaryExtract) {
+      try {
+        ByteBuffer buffer = binaryExtract.extractionBuffer();
+        if (!buffer.hasRemaining()) return TraceContextOrSamplingFlags.EMPTY;
+        AsciiSequence b3 = new AsciiSequence(buffer, buffer.position(), buffer.limit());
+        buffer.position(buffer.limit()); // consume the buffer as if we read it
+        return B3SingleFormat.parseB3SingleFormat(b3); // null when malformed
+      } catch (RuntimeException e) {
+        return null;
+      }
+    }
+
+    /** Same encoding as {@link B3SingleFormat#writeB3SingleFormatAsBytes(TraceContext)} */
+    @Override public void inject(TraceContext traceContext, BinaryInject binaryInject) {
+      long traceIdHigh = traceContext.traceIdHigh(), parentId = traceContext.parentIdAsLong();
+      Boolean sampled = traceContext.sampled();
+
+      int length = 33; // traceId-spanId
+      if (traceIdHigh != 0L) length += 16;
+      if (sampled != null) length += 2;
+      if (parentId != 0L) length += 17;
+
+      ByteBuffer buffer = binaryInject.injectionBuffer(length);
+      if (traceIdHigh != 0L) writeHexLong(buffer, traceIdHigh);
+      writeHexLong(buffer, traceContext.traceId());
+      buffer.put((byte) '-');
+      writeHexLong(buffer, traceContext.spanId());
+      if (sampled != null) {
+        buffer.put((byte) '-');
+        buffer.put((byte) (traceContext.debug() ? 'd' : sampled ? '1' : '0'));
+      }
+      if (parentId != 0L) {
+        buffer.put((byte) '-');
+        writeHexLong(buffer, parentId);
+      }
+    }
+
+    static void writeHexLong(ByteBuffer buffer, long v) {
+      for (int shift = 60; shift >= 0; shift -= 4) {
+        buffer.put(HEX_DIGITS[(int) (v >>> shift) & 0xf]);
+      }
+    }
+  }
+
+  /**
+   * Writes the trace context as raw bytes, followed by baggage as length-prefixed UTF-8. This is
+   * about half the size of B3 single format and needs no hex parsing.
+   *
+   * <p>The encoding is as follows, with multi-byte numbers in big-endian order:
+   * <pre>{@code
+   * version      1 byte, currently 0
+   * flags        1 byte, bit set of FLAG_ constants
+   * traceIdHigh  8 bytes, when FLAG_TRACE_ID_HIGH
+   * traceId      8 bytes
+   * spanId       8 bytes
+   * parentId     8 bytes, when FLAG_PARENT_ID
+   * count        1 byte, count of baggage fields that follow
+   * for each baggage field:
+   *   nameLength   1 byte, unsigned
+   *   name         UTF-8 bytes
+   *   valueLength  2 bytes, unsigned
+   *   value        UTF-8 bytes
+   * }</pre>
+   *
+   * <p>Baggage fields not configured on this codec are skipped when extracting.
+   *
+   * @see #create(Propagation.Factory, Propagation)
+   */
+  static final class CompactCodec implements BinaryCodec {
+    static final byte VERSION = 0;
+    static final int FLAG_SAMPLED_SET = 1, FLAG_SAMPLED = 1 << 1, FLAG_DEBUG = 1 << 2,
+        FLAG_TRACE_ID_HIGH = 1 << 3, FLAG_PARENT_ID = 1 << 4;
+    static final int MAX_NAME_LENGTH = 0xff, MAX_VALUE_LENGTH = 0xffff;
+
+    final Propagation.Factory propagationFactory;
+    final BaggageField[] fields;
+    final byte[][] names;
+
+    /** Returns a codec for the same baggage fields that {@code propagation} sends remotely. */
+    static CompactCodec create(Propagation.Factory propagationFactory,
+        Propagation<String> propagation) {
+      return new CompactCodec(propagationFactory, remoteFields(propagationFactory, propagation));
+    }
+
+    /**
+     * Brave doesn't say which baggage fields are remote, as opposed to local, so this injects a
+     * distinct value into each field, and keeps those whose value was written to a header.
+     */
+    static BaggageField[] remoteFields(Propagation.Factory propagationFactory,
+        Propagation<String> propagation) {
+      TraceContext probe =
+          propagationFactory.decorate(TraceContext.newBuilder().traceId(1L).spanId(1L).build());
+      List<BaggageField> fields = BaggageField.getAll(probe);
+      for (int i = 0; i < fields.size(); i++) fields.get(i).updateValue(probe, probeValue(i));
+
+      StringBuilder headers = new StringBuilder();
+      propagation.<StringBuilder>injector((c, k, v) -> c.append(v).append('\n'))
+          .inject(probe, headers);
+
+      List<BaggageField> result = new ArrayList<>();
+      for (int i = 0; i < fields.size(); i++) {
+        if (headers.indexOf(probeValue(i)) != -1) result.add(fields.get(i));
+      }
+      return result.toArray(new BaggageField[0]);
+    }
+
+    /** The trailing delimiter means one value never contains another, like 1 and 10 would. */
+    static String probeValue(int index) {
+      return "probe" + index + "x";
+    }
+
+    CompactCodec(Propagation.Factory propagationFactory, BaggageField... fields) {
+      if (fields.length > 0xff) throw new IllegalArgumentException("more than 255 baggage fields");
+      this.propagationFactory = propagationFactory;
+      this.fields = fields;
+      this.names = new byte[fields.length][];
+      for (int i = 0; i < fields.length; i++) {
+        names[i] = fields[i].name().getBytes(UTF_8);
+        if (names[i].length > MAX_NAME_LENGTH) {
+          throw new IllegalArgumentException(fields[i] + " name is longer than 255 bytes");
+        }
+      }
+    }
+
+    @Override public void inject(TraceContext traceContext, BinaryInject binaryInject) {
+      long traceIdHigh = traceContext.traceIdHigh(), parentId = traceContext.parentIdAsLong();
+      Boolean sampled = traceContext.sampled();
+
+      int flags = 0, length = 19; // version, flags, traceId, spanId, count
+      if (sampled != null) flags |= sampled ? FLAG_SAMPLED_SET | FLAG_SAMPLED : FLAG_SAMPLED_SET;
+      if (traceContext.debug()) flags |= FLAG_DEBUG;
+      if (traceIdHigh != 0L) {
+        flags |= FLAG_TRACE_ID_HIGH;
+        length += 8;
+      }
+      if (parentId != 0L) {
+        flags |= FLAG_PARENT_ID;
+        length += 8;
+      }
+
+      byte[][] values = null; // only allocated when there's baggage
+      int count = 0;
+      for (int i = 0; i < fields.length; i++) {
+        String value = fields[i].getValue(traceContext);
+        if (value == null) continue;
+        if (values == null) values = new byte[fields.length][];
+        values[i] = value.getBytes(UTF_8);
+        if (values[i].length > MAX_VALUE_LENGTH) { // drop rather than truncate
+          values[i] = null;
+          continue;
+        }
+        length += 3 + names[i].length + values[i].length;
+        count++;
+      }
+
+      ByteBuffer buffer = binaryInject.injectionBuffer(length);
+      buffer.put(VERSION).put((byte) flags);
+      if (traceIdHigh != 0L) buffer.putLong(traceIdHigh);
+      buffer.putLong(traceContext.traceId()).putLong(traceContext.spanId());
+      if (parentId != 0L) buffer.putLong(parentId);
+      buffer.put((byte) count);
+      if (count == 0) return;
+      for (int i = 0; i < fields.length; i++) {
+        if (values[i] == null) continue;
+        buffer.put((byte) names[i].length).put(names[i]);
+        buffer.putShort((short) values[i].length).put(values[i]);
+      }
+    }
+
+    @Override public TraceContextOrSamplingFlags extract(BinaryExtract binaryExtract) {
+      TraceContextOrSamplingFlags result = extractOrNull(binaryExtract);
+      return result != null ? result : TraceContextOrSamplingFlags.EMPTY;
+    }
+
+    @Override public TraceContextOrSamplingFlags extractOrNull(BinaryExtract binaryExtract) {
+      try {
+        ByteBuffer buffer = binaryExtract.extractionBuffer();
+        if (!buffer.hasRemaining()) return TraceContextOrSamplingFlags.EMPTY;
+        return extract(buffer);
+      } catch (RuntimeException e) { // ex. BufferUnderflowException
+        return null;
+      }
+    }
+
+    /** Returns null when the version is unknown. */
+    @Nullable TraceContextOrSamplingFlags extract(ByteBuffer buffer) {
+      if (buffer.get() != VERSION) return null;
+      int flags = buffer.get();
+
+      TraceContext.Builder builder = TraceContext.newBuilder();
+      if ((flags & FLAG_TRACE_ID_HIGH) != 0) builder.traceIdHigh(buffer.getLong());
+      builder.traceId(buffer.getLong()).spanId(buffer.getLong());
+      if ((flags & FLAG_PARENT_ID) != 0) builder.parentId(buffer.getLong());
+      if ((flags & FLAG_DEBUG) != 0) {
+        builder.debug(true);
+      } else if ((flags & FLAG_SAMPLED_SET) != 0) {
+        builder.sampled((flags & FLAG_SAMPLED) != 0);
+      }
+      TraceContext context = propagationFactory.decorate(builder.build());
+
+      for (int count = buffer.get() & 0xff; count > 0; count--) {
+        int nameLength = buffer.get() & 0xff, namePosition = buffer.position();
+        buffer.position(namePosition + nameLength);
+        int valueLength = buffer.getShort() & 0xffff, valuePosition = buffer.position();
+        buffer.position(valuePosition + valueLength);
+
+        int index = indexOfName(buffer, namePosition, nameLength);
+        if (index == -1) continue;
+        fields[index].updateValue(context, decodeUtf8(buffer, valuePosition, valueLength));
+      }
+      return TraceContextOrSamplingFlags.create(context);
+    }
+
+    /** Compares names with absolute gets to avoid allocating them. */
+    int indexOfName(ByteBuffer buffer, int position, int length) {
+      for (int i = 0; i < names.length; i++) {
+        byte[] name = names[i];
+        if (name.length != length) continue;
+        int j = 0;
+        while (j < length && name[j] == buffer.get(position + j)) j++;
+        if (j == length) return i;
+      }
+      return -1;
+    }
+
+    static String decodeUtf8(ByteBuffer buffer, int position, int length) {
+      if (buffer.hasArray()) {
+        return new String(buffer.array(), buffer.arrayOffset() + position, length, UTF_8);
+      }
+      byte[] bytes = new byte[length];
+      for (int i = 0; i < length; i++) bytes[i] = buffer.get(position + i);
+      return new String(bytes, UTF_8);
+    }
+  }
+
+  /** A view of ASCII bytes in a buffer, read with absolute gets so that nothing is copied. */
+  static final class AsciiSequence implements CharSequence {
+    final ByteBuffer buffer;
+    final int beginIndex, endIndex;
+
+    AsciiSequence(ByteBuffer buffer, int beginIndex, int endIndex) {
+      this.buffer = buffer;
+      this.beginIndex = beginIndex;
+      this.endIndex = endIndex;
+    }
+
+    @Override public int length() {
+      return endIndex - beginIndex;
+    }
+
+    @Override public char charAt(int index) {
+      return (char) (buffer.get(beginIndex + index) & 0xff);
+    }
+
+    @Override public CharSequence subSequence(int start, int end) {
+      return new AsciiSequence(buffer, beginIndex + start, beginIndex + end);
+    }
+
+    @Override public String toString() {
+      char[] result = new char[length()];
+      for (int i = 0; i < result.length; i++) result[i] = charAt(i);
+      return new String(result);
+    }
+  }
+}
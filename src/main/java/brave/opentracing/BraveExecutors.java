@@ -0,0 +1,309 @@
+/*
+ * Copyright 2016-2019 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.opentracing;
+
+import brave.Tracing;
+import brave.internal.Nullable;
+import brave.propagation.CurrentTraceContext;
+import brave.propagation.CurrentTraceContext.Scope;
+import brave.propagation.TraceContext;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Propagates the current trace context to tasks run by an executor. Only the raw {@link
+ * TraceContext} is captured when a task is submitted, so no {@link BraveSpan} or {@link BraveScope}
+ * is allocated per task.
+ *
+ * <p>Plain executors use Brave's {@link CurrentTraceContext#executor(Executor)} and {@link
+ * CurrentTraceContext#executorService(ExecutorService)}. Wrappers here are only used to schedule
+ * tasks, which Brave doesn't wrap, and to annotate queue wait.
+ *
+ * @see BraveTracer#wrap(Executor)
+ */
+final class BraveExecutors {
+  static final String QUEUED = "executor.queued", STARTED = "executor.started";
+
+  final Tracing tracing;
+  final CurrentTraceContext currentTraceContext;
+  final boolean annotateQueueWait;
+
+  BraveExecutors(Tracing tracing, boolean annotateQueueWait) {
+    this.tracing = tracing;
+    this.currentTraceContext = tracing.currentTraceContext();
+    this.annotateQueueWait = annotateQueueWait;
+  }
+
+  Executor wrap(Executor executor) {
+    if (!annotateQueueWait) return currentTraceContext.executor(executor);
+    return new QueueWaitExecutor(this, executor);
+  }
+
+  ExecutorService wrap(ExecutorService executorService) {
+    if (!annotateQueueWait) return currentTraceContext.executorService(executorService);
+    return new TracingExecutorService(this, executorService);
+  }
+
+  ScheduledExecutorService wrap(ScheduledExecutorService executorService) {
+    return new TracingScheduledExecutorService(this, executorService);
+  }
+
+  Runnable wrap(Runnable task) {
+    if (task == null) throw new NullPointerException("task == null");
+    TraceContext context = currentTraceContext.get();
+    BraveSpan span = annotateQueueWait ? queueWaitSpan(context) : null;
+    if (span != null) return new QueueWaitRunnable(this, context, task, span);
+    return currentTraceContext.wrap(task);
+  }
+
+  <V> Callable<V> wrap(Callable<V> task) {
+    if (task == null) throw new NullPointerException("task == null");
+    TraceContext context = currentTraceContext.get();
+    BraveSpan span = annotateQueueWait ? queueWaitSpan(context) : null;
+    if (span != null) return new QueueWaitCallable<>(this, context, task, span);
+    return currentTraceContext.wrap(task);
+  }
+
+  /** Scheduled tasks aren't annotated, as their queue wait includes the requested delay. */
+  Runnable wrapScheduled(Runnable task) {
+    if (task == null) throw new NullPointerException("task == null");
+    return currentTraceContext.wrap(task);
+  }
+
+  <V> Callable<V> wrapScheduled(Callable<V> task) {
+    if (task == null) throw new NullPointerException("task == null");
+    return currentTraceContext.wrap(task);
+  }
+
+  <V> List<Callable<V>> wrap(Collection<? extends Callable<V>> tasks) {
+    if (tasks == null) throw new NullPointerException("tasks == null");
+    List<Callable<V>> result = new ArrayList<>(tasks.size());
+    for (Callable<V> task : tasks) result.add(wrap(task));
+    return result;
+  }
+
+  /**
+   * Only a recorded span activated with the OpenTracing api is annotated. A span placed in scope
+   * with Brave's api could already be finished when the task runs, and annotating it by context
+   * would report an orphaned span.
+   */
+  @Nullable static BraveSpan queueWaitSpan(@Nullable TraceContext context) {
+    if (context == null || !Boolean.TRUE.equals(context.sampled())) return null;
+    return BraveSpan.activated(context);
+  }
+
+  long currentTimeMicroseconds(TraceContext context) {
+    return tracing.clock(context).currentTimeMicroseconds();
+  }
+
+  /** Records when the task was queued and when it started, unless the span already finished. */
+  void annotateQueueWait(TraceContext context, BraveSpan span, long queuedMicros) {
+    if (span.isFinished()) return;
+    brave.Span delegate = span.delegate;
+    delegate.annotate(queuedMicros, QUEUED);
+    delegate.annotate(currentTimeMicroseconds(context), STARTED);
+  }
+
+  static final class QueueWaitRunnable implements Runnable {
+    final BraveExecutors executors;
+    final TraceContext context;
+    final Runnable delegate;
+    final BraveSpan span;
+    final long queuedMicros;
+
+    QueueWaitRunnable(BraveExecutors executors, TraceContext context, Runnable delegate,
+        BraveSpan span) {
+      this.executors = executors;
+      this.context = context;
+      this.delegate = delegate;
+      this.span = span;
+      this.queuedMicros = executors.currentTimeMicroseconds(context);
+    }
+
+    @Override public void run() {
+      executors.annotateQueueWait(context, span, queuedMicros);
+      Scope scope = executors.currentTraceContext.maybeScope(context);
+      try {
+        delegate.run();
+      } finally {
+        scope.close();
+      }
+    }
+
+    @Override public String toString() {
+      return delegate.toString();
+    }
+  }
+
+  static final class QueueWaitCallable<V> implements Callable<V> {
+    final BraveExecutors executors;
+    final TraceContext context;
+    final Callable<V> delegate;
+    final BraveSpan span;
+    final long queuedMicros;
+
+    QueueWaitCallable(BraveExecutors executors, TraceContext context, Callable<V> delegate,
+        BraveSpan span) {
+      this.executors = executors;
+      this.context = context;
+      this.delegate = delegate;
+      this.span = span;
+      this.queuedMicros = executors.currentTimeMicroseconds(context);
+    }
+
+    @Override public V call() throws Exception {
+      executors.annotateQueueWait(context, span, queuedMicros);
+      Scope scope = executors.currentTraceContext.maybeScope(context);
+      try {
+        return delegate.call();
+      } finally {
+        scope.close();
+      }
+    }
+
+    @Override public String toString() {
+      return delegate.toString();
+    }
+  }
+
+  static final class QueueWaitExecutor implements Executor {
+    final BraveExecutors executors;
+    final Executor delegate;
+
+    QueueWaitExecutor(BraveExecutors executors, Executor delegate) {
+      this.executors = executors;
+      this.delegate = delegate;
+    }
+
+    @Override public void execute(Runnable task) {
+      delegate.execute(executors.wrap(task));
+    }
+
+    @Override public String toString() {
+      return delegate.toString();
+    }
+  }
+
+  static class TracingExecutorService implements ExecutorService {
+    final BraveExecutors executors;
+    final ExecutorService delegate;
+
+    TracingExecutorService(BraveExecutors executors, ExecutorService delegate) {
+      this.executors = executors;
+      this.delegate = delegate;
+    }
+
+    @Override public void execute(Runnable task) {
+      delegate.execute(executors.wrap(task));
+    }
+
+    @Override public Future<?> submit(Runnable task) {
+      return delegate.submit(executors.wrap(task));
+    }
+
+    @Override public <T> Future<T> submit(Runnable task, T result) {
+      return delegate.submit(executors.wrap(task), result);
+    }
+
+    @Override public <T> Future<T> submit(Callable<T> task) {
+      return delegate.submit(executors.wrap(task));
+    }
+
+    @Override public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks)
+        throws InterruptedException {
+      return delegate.invokeAll(executors.wrap(tasks));
+    }
+
+    @Override public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks,
+        long timeout, TimeUnit unit) throws InterruptedException {
+      return delegate.invokeAll(executors.wrap(tasks), timeout, unit);
+    }
+
+    @Override public <T> T invokeAny(Collection<? extends Callable<T>> tasks)
+        throws InterruptedException, ExecutionException {
+      return delegate.invokeAny(executors.wrap(tasks));
+    }
+
+    @Override public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout,
+        TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+      return delegate.invokeAny(executors.wrap(tasks), timeout, unit);
+    }
+
+    @Override public void shutdown() {
+      delegate.shutdown();
+    }
+
+    @Override public List<Runnable> shutdownNow() {
+      return delegate.shutdownNow();
+    }
+
+    @Override public boolean isShutdown() {
+      return delegate.isShutdown();
+    }
+
+    @Override public boolean isTerminated() {
+      return delegate.isTerminated();
+    }
+
+    @Override public boolean awaitTermination(long timeout, TimeUnit unit)
+        throws InterruptedException {
+      return delegate.awaitTermination(timeout, unit);
+    }
+
+    @Override public String toString() {
+      return delegate.toString();
+    }
+  }
+
+  static final class TracingScheduledExecutorService extends TracingExecutorService
+      implements ScheduledExecutorService {
+    final ScheduledExecutorService delegate;
+
+    TracingScheduledExecutorService(BraveExecutors executors, ScheduledExecutorService delegate) {
+      super(executors, delegate);
+      this.delegate = delegate;
+    }
+
+    @Override public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+      return delegate.schedule(executors.wrapScheduled(task), delay, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> task, long delay, TimeUnit unit) {
+      return delegate.schedule(executors.wrapScheduled(task), delay, unit);
+    }
+
+    @Override public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay,
+        long period, TimeUnit unit) {
+      return delegate.scheduleAtFixedRate(executors.wrapScheduled(task), initialDelay, period,
+          unit);
+    }
+
+    @Override public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long initialDelay,
+        long delay, TimeUnit unit) {
+      return delegate.scheduleWithFixedDelay(executors.wrapScheduled(task), initialDelay, delay,
+          unit);
+    }
+  }
+}
@@ -13,26 +13,37 @@
  */
 package brave.opentracing;
 
-import brave.Tracer.SpanInScope;
+import brave.internal.Nullable;
+import brave.propagation.CurrentTraceContext;
 import io.opentracing.Scope;
 
 /**
  * {@link BraveScope} is a simple {@link Scope} implementation that wraps the corresponding {@link
- * SpanInScope Brave scope}.
+ * CurrentTraceContext.Scope Brave scope}.
  *
- * @see SpanInScope
+ * @see CurrentTraceContext.Scope
  */
 public class BraveScope implements Scope {
-  final SpanInScope delegate;
+  final CurrentTraceContext.Scope delegate;
+  /**
+   * The activated span. This keeps it reachable while in scope, as the context in scope only
+   * references it weakly.
+   */
+  final BraveSpan span;
+  /** Set when sampled for leak detection. */
+  @Nullable LeakDetector.Tracked leak;
 
   /**
-   * @param delegate a SpanInScope to be closed upon deactivation of this ActiveSpan
+   * @param delegate a Scope to be closed upon deactivation of this ActiveSpan
+   * @param span the span activated by this scope
    */
-  BraveScope(SpanInScope delegate) {
+  BraveScope(CurrentTraceContext.Scope delegate, BraveSpan span) {
     this.delegate = delegate;
+    this.span = span;
   }
 
   @Override public void close() {
+    LeakDetector.close(leak);
     delegate.close();
   }
 
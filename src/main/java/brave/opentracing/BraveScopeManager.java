@@ -16,6 +16,7 @@ package brave.opentracing;
 import brave.Tracer;
 import brave.Tracing;
 import brave.propagation.CurrentTraceContext;
+import brave.propagation.TraceContext;
 import io.opentracing.Scope;
 import io.opentracing.ScopeManager;
 import io.opentracing.Span;
@@ -24,24 +25,48 @@ import io.opentracing.Span;
 public class BraveScopeManager implements ScopeManager {
   final Tracing tracing;
   final Tracer tracer;
+  final CurrentTraceContext currentTraceContext;
+  final LogFieldsFormatter logFieldsFormatter;
+  final BraveTracerMetrics metrics;
+  final LeakDetector leakDetector;
 
-  BraveScopeManager(Tracing tracing) {
+  BraveScopeManager(Tracing tracing, LogFieldsFormatter logFieldsFormatter,
+      BraveTracerMetrics metrics, LeakDetector leakDetector) {
     this.tracing = tracing;
     this.tracer = tracing.tracer();
+    this.currentTraceContext = tracing.currentTraceContext();
+    this.logFieldsFormatter = logFieldsFormatter;
+    this.metrics = metrics;
+    this.leakDetector = leakDetector;
   }
 
   @Override public BraveScope activate(Span span) {
+    metrics.activateSpanCalls.increment();
     if (span == null) return null;
     if (!(span instanceof BraveSpan)) {
       throw new IllegalArgumentException(
           "Span must be an instance of brave.opentracing.BraveSpan, but was " + span.getClass());
     }
-    return new BraveScope(tracer.withSpanInScope(((BraveSpan) span).delegate));
+    BraveSpan braveSpan = (BraveSpan) span;
+    BraveScope result =
+        new BraveScope(currentTraceContext.newScope(braveSpan.scopedContext()), braveSpan);
+    result.leak = leakDetector.trackScope(result, braveSpan);
+    return result;
   }
 
+  /**
+   * Returns the same instance passed to {@link #activate(Span)}, or a new one when the current span
+   * was placed in scope with Brave's api.
+   */
   @Override public BraveSpan activeSpan() {
+    metrics.activeSpanCalls.increment();
+    TraceContext context = currentTraceContext.get();
+    if (context == null) return null;
+    BraveSpan activated = BraveSpan.activated(context);
+    if (activated != null) return activated;
     brave.Span braveSpan = tracer.currentSpan();
-    return braveSpan != null ? new BraveSpan(tracer, braveSpan) : null;
+    if (braveSpan == null) return null;
+    return BraveSpan.create(tracing, logFieldsFormatter, metrics, braveSpan, false);
   }
 
   /* @Override deprecated 0.32 method: Intentionally no override to ensure 0.33 works! */
@@ -15,13 +15,24 @@ package brave.opentracing;
 
 import brave.Span.Kind;
 import brave.Tracer;
+import brave.Tracing;
 import brave.baggage.BaggageField;
 import brave.baggage.BaggagePropagation;
 import brave.internal.Nullable;
+import brave.propagation.TraceContext;
 import io.opentracing.Span;
+import io.opentracing.tag.BooleanTag;
+import io.opentracing.tag.IntTag;
+import io.opentracing.tag.StringTag;
+import io.opentracing.tag.Tag;
 import io.opentracing.tag.Tags;
-import java.util.Iterator;
+import java.lang.ref.WeakReference;
+import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Holds the {@linkplain brave.Span} used by the underlying {@linkplain brave.Tracer}.
@@ -31,20 +42,95 @@ import java.util.Map;
  *
  * <p>Operations to add data to the span are ignored once {@link #finish()} or {@link
  * #finish(long)} are called.
+ *
+ * <p>Like other spans, this is meant to be modified by one thread at a time. However, finishing is
+ * exactly once, even when racing, and a late sampling decision either precedes finish or is
+ * ignored. Data held until finish is locked, so that data added while another thread finishes is
+ * either recorded or ignored, but never corrupted.
+ *
+ * <p>This type is only subclassed by {@link NoopBraveSpan}, and constructors are package-private so
+ * that users can't subclass it. New mutators need an override there.
  */
-public final class BraveSpan implements Span {
+public class BraveSpan implements Span {
+  // Keys of tags that map to span fields or sampling, as opposed to being added as tags.
+  static final int TAG_OTHER = 0, TAG_SPAN_KIND = 1, TAG_PEER_SERVICE = 2, TAG_PEER_HOST_IPV4 = 3,
+      TAG_PEER_HOST_IPV6 = 4, TAG_PEER_PORT = 5, TAG_ERROR = 6, TAG_SAMPLING_PRIORITY = 7;
+
+  private final Tracing tracing;
   private final Tracer tracer;
-  volatile BraveSpanContext context;
-  /** Prevents late adding data to a span */
-  volatile boolean finishCalled;
-  /** Reference invalidated when sampling priority set to 0, which can happen on any thread */
-  volatile brave.Span delegate;
-  volatile String remoteIpV4, remoteIpV6;
-  volatile int remotePort;
+  private final LogFieldsFormatter logFieldsFormatter;
+  private final BraveTracerMetrics metrics;
+
+  static final int FINISHED = 1, UNSAMPLED = 1 << 1;
+  static final AtomicIntegerFieldUpdater<BraveSpan> STATE =
+      AtomicIntegerFieldUpdater.newUpdater(BraveSpan.class, "state");
+  /**
+   * Bit set of {@link #FINISHED} and {@link #UNSAMPLED}, changed with compare-and-set. This is the
+   * only field read with volatile semantics when adding data. It ensures the span finishes once,
+   * and that a late sampling decision either happens before finish or not at all.
+   */
+  volatile int state;
+
+  /**
+   * True when this was started by {@link BraveSpanBuilder}, so is expected to finish the span. Only
+   * then is formatting data deferred until finish. Other instances, such as returned by {@link
+   * BraveScopeManager#activeSpan()} for a span started with Brave's api, may never be finished.
+   */
+  final boolean deferData;
+
+  // The following fields are plain, as spans are usually used by one thread at a time. Data
+  // deferred until finish is the exception, as it is guarded by this.
+  BraveSpanContext context;
+  /** Reference invalidated when sampling priority set to 0 */
+  brave.Span delegate;
+  // String or Number, formatted only when a recorded span finishes
+  Object remoteIpV4, remoteIpV6;
+  int remotePort;
+  /**
+   * Numeric tags as key, value pairs, converted to strings on {@link #finish()} only when the span
+   * is recorded. Guarded by this, as a tag can be set while another thread finishes the span.
+   */
+  Object[] numberTags;
+  int numberTagCount;
+  /**
+   * Copies of fields passed to {@link #log(Map)}, formatted on {@link #finish()}. Guarded by this,
+   * as fields can be logged while another thread finishes the span.
+   */
+  long[] logTimestamps;
+  Object[][] logFields;
+  int logCount;
+  /** Set by {@link BraveSpanBuilder} when sampled for leak detection. */
+  @Nullable LeakDetector.Tracked leak;
+  /** Lazily initialized by {@link #scopedContext()} */
+  volatile TraceContext scopedContext;
+
+  /**
+   * Returns a {@link NoopBraveSpan} when the delegate isn't recorded.
+   *
+   * @param deferData true when the caller will finish the span with this instance
+   */
+  static BraveSpan create(Tracing tracing, LogFieldsFormatter logFieldsFormatter,
+      BraveTracerMetrics metrics, brave.Span delegate, boolean deferData) {
+    if (delegate.isNoop()) {
+      return new NoopBraveSpan(tracing, logFieldsFormatter, metrics, delegate);
+    }
+    return new BraveSpan(tracing, logFieldsFormatter, metrics, delegate, deferData);
+  }
 
   // tracer is only needed because the sampling.priority flag is used as a sampling api
-  BraveSpan(brave.Tracer tracer, brave.Span delegate) {
-    this.tracer = tracer;
+  // package-private, so that only NoopBraveSpan can subclass this
+  BraveSpan(Tracing tracing, LogFieldsFormatter logFieldsFormatter, BraveTracerMetrics metrics,
+      brave.Span delegate) {
+    this(tracing, logFieldsFormatter, metrics, delegate, false);
+  }
+
+  BraveSpan(Tracing tracing, LogFieldsFormatter logFieldsFormatter, BraveTracerMetrics metrics,
+      brave.Span delegate, boolean deferData) {
+    this.deferData = deferData;
+    this.tracing = tracing;
+    this.tracer = tracing.tracer();
+    this.logFieldsFormatter = logFieldsFormatter;
+    this.metrics = metrics;
     if (delegate == null) throw new NullPointerException("delegate == null");
     this.delegate = delegate;
     this.context = BraveSpanContext.create(delegate.context());
@@ -62,23 +148,25 @@ public final class BraveSpan implements Span {
   }
 
   @Override public BraveSpan setTag(String key, String value) {
-    if (finishCalled) return this;
+    if (isFinished()) return this;
 
-    if (trySetPeer(delegate, key, value)) return this;
-    Kind kind = trySetKind(key, value);
-    if (kind != null) {
-      delegate.kind(kind);
-      context.kind = kind;
-      return this;
-    }
+    int special = specialTag(key);
+    if (special != TAG_OTHER && setSpecialTag(special, value)) return this;
+    if (numberTagCount != 0) removeNumberTag(key); // the last value set wins
     delegate.tag(key, value);
     return this;
   }
 
   @Override public BraveSpan setTag(String key, boolean value) {
-    if (finishCalled) return this;
+    if (isFinished()) return this;
 
-    if (Tags.ERROR.getKey().equals(key) && !value) return this;
+    int special = specialTag(key);
+    if (special == TAG_OTHER) {
+      if (numberTagCount != 0) removeNumberTag(key); // the last value set wins
+      delegate.tag(key, value ? "true" : "false");
+      return this;
+    }
+    if (special == TAG_ERROR && !value) return this;
     return setTag(key, Boolean.toString(value));
   }
 
@@ -87,56 +175,184 @@ public final class BraveSpan implements Span {
    * current span will be abandoned and future references to the {@link #context()} will be
    * unsampled. This does not affect the active span, nor does it affect any equivalent instances of
    * this object. This is a best efforts means to handle late sampling decisions.
+   *
+   * <p>When this was started by a span builder, values of ordinary tags are converted to strings
+   * when this span is finished, and only if it is recorded. Like the peer address, they are not
+   * added when the {@linkplain #unwrap() underlying span} is finished directly. Atomic numbers are
+   * read when the tag is set, but other mutable numbers are read on finish. A value that fails to
+   * convert is dropped.
    */
   @Override public BraveSpan setTag(String key, Number value) {
-    if (finishCalled) return this;
-
-    if (trySetPeer(key, value)) return this;
-
-    // handle late sampling decision
-    if (Tags.SAMPLING_PRIORITY.getKey().equals(key) && value.intValue() == 0) {
-      delegate.abandon();
-      // convert the span to no-op
-      Kind kind = context.kind;
-      delegate = tracer.toSpan(delegate.context().toBuilder().sampled(false).build());
-      context = BraveSpanContext.create(delegate.context());
-      context.kind = kind;
+    if (value == null) throw new NullPointerException("value == null");
+    if (isFinished()) return this;
+
+    int special = specialTag(key);
+    if (special != TAG_OTHER) {
+      if (setSpecialTag(special, value)) return this;
+      return setTag(key, value.toString());
+    }
+    if (delegate.isNoop()) return this; // don't format a value that will be dropped
+    if (!deferData) { // another instance, or none, will finish the span
+      delegate.tag(key, value.toString());
+      return this;
+    }
+    addNumberTag(key, snapshot(value));
+    return this;
+  }
+
+  /** Reads the current value of atomic types, which would otherwise be formatted on finish. */
+  static Number snapshot(Number value) {
+    if (value instanceof AtomicInteger) return value.intValue();
+    if (value instanceof AtomicLong) return value.longValue();
+    return value;
+  }
+
+  synchronized void addNumberTag(String key, Number value) {
+    Object[] tags = numberTags;
+    int count = numberTagCount;
+    for (int i = 0; i < count; i += 2) {
+      if (key.equals(tags[i])) {
+        tags[i + 1] = value;
+        return;
+      }
+    }
+    if (tags == null) {
+      numberTags = tags = new Object[4];
+    } else if (count == tags.length) {
+      numberTags = tags = Arrays.copyOf(tags, count * 2);
+    }
+    tags[count] = key;
+    tags[count + 1] = value;
+    numberTagCount = count + 2;
+  }
+
+  synchronized void removeNumberTag(String key) {
+    Object[] tags = numberTags;
+    int count = numberTagCount;
+    for (int i = 0; i < count; i += 2) {
+      if (!key.equals(tags[i])) continue;
+      System.arraycopy(tags, i + 2, tags, i, count - i - 2);
+      tags[count - 2] = tags[count - 1] = null;
+      numberTagCount = count - 2;
+      return;
     }
-    return setTag(key, value.toString());
   }
 
-  @Override public <T> BraveSpan setTag(io.opentracing.tag.Tag<T> tag, T value) {
+  synchronized void flushNumberTags() {
+    int count = numberTagCount;
+    if (count == 0) return;
+    brave.Span delegate = this.delegate; // sampling priority may have changed since tags were added
+    if (!delegate.isNoop()) {
+      for (int i = 0; i < count; i += 2) {
+        String value;
+        try {
+          value = numberTags[i + 1].toString();
+        } catch (RuntimeException e) {
+          continue; // drop the tag, as failing here would prevent the span from finishing
+        }
+        delegate.tag((String) numberTags[i], value);
+      }
+    }
+    numberTags = null;
+    numberTagCount = 0;
+  }
+
+  @Override public <T> BraveSpan setTag(Tag<T> tag, T value) {
     // Strange there's a new api only to dispatch something that can be done as easily directly
     // eg instead of tag.set(span, value) this allows span.setTag(tag, value) (3 more characters!)
     // Would be nice to see documentation clarify why this was important enough to break api over.
+    //
+    // Builtin tag types only call back into setTag, so skip that hop for them. Subtypes may
+    // override set, so they are not matched here.
+    Class<?> type = tag.getClass();
+    if (type == StringTag.class) return setTag(tag.getKey(), (String) value);
+    if (type == IntTag.class) return setTag(tag.getKey(), (Number) value);
+    if (type == BooleanTag.class) return setTag(tag.getKey(), (Boolean) value);
     tag.set(this, value);
     return this;
   }
 
+  /**
+   * Fields are formatted as an annotation like "key1=value1 key2=value2". When this was started by
+   * a span builder, that happens when this span is finished, and only if it is recorded. Until
+   * then, the fields are held in a copy of the map, and fields that fail to format are dropped.
+   *
+   * @see BraveTracer.Builder#logValueFormatter(Class, BraveTracer.LogValueFormatter)
+   */
   @Override public BraveSpan log(Map<String, ?> fields) {
-    if (finishCalled) return this;
+    if (isFinished()) return this;
 
     if (fields.isEmpty()) return this;
-    return log(toAnnotation(fields));
+    brave.Span delegate = this.delegate;
+    if (delegate.isNoop()) return this;
+    if (!deferData) { // another instance, or none, will finish the span
+      delegate.annotate(logFieldsFormatter.format(LogFieldsFormatter.copy(fields)));
+      return this;
+    }
+    // use the span's clock, so that the annotation is consistent with its start timestamp
+    addLog(tracing.clock(delegate.context()).currentTimeMicroseconds(), fields);
+    return this;
   }
 
+  /** Like {@link #log(Map)}, except with an explicit timestamp. */
   @Override public BraveSpan log(long timestampMicroseconds, Map<String, ?> fields) {
-    if (finishCalled) return this;
+    if (isFinished()) return this;
 
     if (fields.isEmpty()) return this;
-    // in real life, do like zipkin-go-opentracing: "key1=value1 key2=value2"
-    return log(timestampMicroseconds, toAnnotation(fields));
+    brave.Span delegate = this.delegate;
+    if (delegate.isNoop()) return this;
+    if (!deferData) {
+      String annotation = logFieldsFormatter.format(LogFieldsFormatter.copy(fields));
+      delegate.annotate(timestampMicroseconds, annotation);
+      return this;
+    }
+    addLog(timestampMicroseconds, fields);
+    return this;
+  }
+
+  synchronized void addLog(long timestampMicroseconds, Map<String, ?> fields) {
+    int count = logCount;
+    if (logTimestamps == null) {
+      logTimestamps = new long[2];
+      logFields = new Object[2][];
+    } else if (count == logTimestamps.length) {
+      logTimestamps = Arrays.copyOf(logTimestamps, count * 2);
+      logFields = Arrays.copyOf(logFields, count * 2);
+    }
+    logTimestamps[count] = timestampMicroseconds;
+    logFields[count] = LogFieldsFormatter.copy(fields);
+    logCount = count + 1;
+  }
+
+  synchronized void flushLogs() {
+    int count = logCount;
+    if (count == 0) return;
+    brave.Span delegate = this.delegate; // sampling priority may have changed since logging
+    if (!delegate.isNoop()) {
+      for (int i = 0; i < count; i++) {
+        String annotation;
+        try {
+          annotation = logFieldsFormatter.format(logFields[i]);
+        } catch (RuntimeException e) {
+          continue; // drop the annotation, as failing here would prevent the span from finishing
+        }
+        delegate.annotate(logTimestamps[i], annotation);
+      }
+    }
+    logTimestamps = null;
+    logFields = null;
+    logCount = 0;
   }
 
   @Override public BraveSpan log(String event) {
-    if (finishCalled) return this;
+    if (isFinished()) return this;
 
     delegate.annotate(event);
     return this;
   }
 
   @Override public BraveSpan log(long timestampMicroseconds, String event) {
-    if (finishCalled) return this;
+    if (isFinished()) return this;
 
     delegate.annotate(timestampMicroseconds, event);
     return this;
@@ -144,7 +360,7 @@ public final class BraveSpan implements Span {
 
   /** This is a NOOP unless {@link BaggagePropagation} is in use */
   @Override public BraveSpan setBaggageItem(String key, String value) {
-    BaggageField field = BaggageField.getByName(delegate.context(), key);
+    BaggageField field = context.baggage().field(key);
     if (field == null) return this;
     field.updateValue(delegate.context(), value);
     return this;
@@ -152,105 +368,265 @@ public final class BraveSpan implements Span {
 
   /** Returns null unless {@link BaggagePropagation} is in use */
   @Override public String getBaggageItem(String key) {
-    BaggageField field = BaggageField.getByName(delegate.context(), key);
-    if (field == null) return null;
-    return field.getValue(delegate.context());
+    return context.getBaggageItem(key);
   }
 
   @Override public BraveSpan setOperationName(String operationName) {
-    if (finishCalled) return this;
+    if (isFinished()) return this;
 
     delegate.name(operationName);
     return this;
   }
 
   @Override public void finish() {
-    if (finishCalled) return;
-    finishCalled = true;
+    LeakDetector.close(leak);
+    if (!markFinished()) return;
     trySetRemoteIpAndPort();
+    flushNumberTags();
+    flushLogs();
     delegate.finish();
+    metrics.spansFinished.increment();
   }
 
   @Override public void finish(long finishMicros) {
-    if (finishCalled) return;
-    finishCalled = true;
+    LeakDetector.close(leak);
+    if (!markFinished()) return;
     trySetRemoteIpAndPort();
+    flushNumberTags();
+    flushLogs();
     delegate.finish(finishMicros);
+    metrics.spansFinished.increment();
+  }
+
+  boolean isFinished() {
+    return (state & FINISHED) != 0;
+  }
+
+  /**
+   * Returns true if this call finished the span. Returns false if it was already finished, or
+   * abandoned due to a late sampling decision.
+   */
+  boolean markFinished() {
+    for (int current; ; ) {
+      if (((current = state) & FINISHED) != 0) return false;
+      if (STATE.compareAndSet(this, current, current | FINISHED)) {
+        return (current & UNSAMPLED) == 0;
+      }
+    }
+  }
+
+  /**
+   * Returns the context to place in scope when this span is activated. This is the same as the
+   * delegate's context, except {@link TraceContext#extra()} includes an {@link ActivatedSpan}. That
+   * allows {@link BraveScopeManager#activeSpan()} to return this instance instead of allocating a
+   * new one.
+   */
+  TraceContext scopedContext() {
+    TraceContext result = scopedContext;
+    if (result != null) return result;
+
+    TraceContext context = delegate.context();
+    TraceContext.Builder builder = context.toBuilder().clearExtra();
+    for (Object extra : context.extra()) {
+      // Children inherit extra from their parent: drop it so that only this span is present.
+      if (!(extra instanceof ActivatedSpan)) builder.addExtra(extra);
+    }
+    return scopedContext = builder.addExtra(new ActivatedSpan(this)).build();
   }
 
   /**
-   * Converts a map to a string of form: "key1=value1 key2=value2"
+   * Marks a context placed in scope by {@link #scopedContext()}. Contexts derived from it, such as
+   * children, copy its extra. So, this only weakly references the span, to not keep an ancestor
+   * and its pending data reachable for as long as its descendants. {@link BraveScope} holds the
+   * span strongly, so it stays reachable while in scope.
    */
-  static String toAnnotation(Map<String, ?> fields) {
-    // special-case the "event" field which is similar to the semantics of a zipkin annotation
-    Object event = fields.get("event");
-    if (event != null && fields.size() == 1) return event.toString();
+  static final class ActivatedSpan extends WeakReference<BraveSpan> {
+    ActivatedSpan(BraveSpan span) {
+      super(span);
+    }
+  }
 
-    return joinOnEqualsSpace(fields);
+  /** Returns the span whose {@link #scopedContext()} is the given context, if still in scope. */
+  @Nullable static BraveSpan activated(TraceContext context) {
+    ActivatedSpan marker = context.findExtra(ActivatedSpan.class);
+    BraveSpan span = marker != null ? marker.get() : null;
+    // A child placed in scope with Brave's api inherits its parent's extra, so check the IDs match
+    if (span == null || !context.equals(span.delegate.context())) return null;
+    return span;
   }
 
-  static String joinOnEqualsSpace(Map<String, ?> fields) {
-    if (fields.isEmpty()) return "";
+  /**
+   * Classifies the key with one switch, which only calls {@link String#equals} when the cached
+   * hash code matches. This keeps ordinary tags to a table lookup instead of a chain of compares.
+   * Keys are the same as the corresponding {@link Tags} constants.
+   */
+  static int specialTag(String key) {
+    switch (key) {
+      case "span.kind":
+        return TAG_SPAN_KIND;
+      case "peer.service":
+        return TAG_PEER_SERVICE;
+      case "peer.ipv4":
+        return TAG_PEER_HOST_IPV4;
+      case "peer.ipv6":
+        return TAG_PEER_HOST_IPV6;
+      case "peer.port":
+        return TAG_PEER_PORT;
+      case "error":
+        return TAG_ERROR;
+      case "sampling.priority":
+        return TAG_SAMPLING_PRIORITY;
+      default:
+        return TAG_OTHER;
+    }
+  }
 
-    StringBuilder result = new StringBuilder();
-    for (Iterator<? extends Map.Entry<String, ?>> i = fields.entrySet().iterator(); i.hasNext(); ) {
-      Map.Entry<String, ?> next = i.next();
-      result.append(next.getKey()).append('=').append(next.getValue());
-      if (i.hasNext()) result.append(' ');
+  /** Returns true if the value was consumed, as opposed to needing to be added as a tag. */
+  boolean setSpecialTag(int special, String value) {
+    switch (special) {
+      case TAG_SPAN_KIND:
+        Kind kind = parseKind(value);
+        if (kind == null) return false;
+        delegate.kind(kind);
+        context.kind = kind;
+        return true;
+      case TAG_PEER_SERVICE:
+        delegate.remoteServiceName(value);
+        return true;
+      case TAG_PEER_HOST_IPV4:
+        remoteIpV4 = value;
+        return true;
+      case TAG_PEER_HOST_IPV6:
+        remoteIpV6 = value;
+        return true;
+      default:
+        return false;
     }
-    return result.toString();
   }
 
-  @Nullable static Kind trySetKind(String key, String value) {
-    if (!Tags.SPAN_KIND.getKey().equals(key)) return null;
+  /** Returns true if the value was consumed, as opposed to needing to be added as a tag. */
+  boolean setSpecialTag(int special, Number value) {
+    switch (special) {
+      case TAG_PEER_HOST_IPV4:
+        remoteIpV4 = value;
+        return true;
+      case TAG_PEER_HOST_IPV6:
+        remoteIpV6 = value;
+        return true;
+      case TAG_PEER_PORT:
+        remotePort = value.intValue();
+        return true;
+      case TAG_SAMPLING_PRIORITY:
+        if (value.intValue() == 0) unsample();
+        return false; // still add the tag
+      default:
+        return false;
+    }
+  }
+
+  /** Handles a late sampling decision by converting the span to no-op, unless finish won. */
+  void unsample() {
+    for (int current; ; ) {
+      if (((current = state) & (FINISHED | UNSAMPLED)) != 0) return;
+      if (STATE.compareAndSet(this, current, current | UNSAMPLED)) break;
+    }
+    delegate.abandon();
+    metrics.spansAbandoned.increment();
+    Kind kind = context.kind;
+    delegate = tracer.toSpan(delegate.context().toBuilder().sampled(false).build());
+    context = BraveSpanContext.create(delegate.context());
+    context.kind = kind;
+    scopedContext = null;
+  }
 
-    Kind kind;
+  @Nullable static Kind parseKind(String value) {
     if (Tags.SPAN_KIND_CLIENT.equals(value)) {
-      kind = Kind.CLIENT;
+      return Kind.CLIENT;
     } else if (Tags.SPAN_KIND_SERVER.equals(value)) {
-      kind = Kind.SERVER;
+      return Kind.SERVER;
     } else if (Tags.SPAN_KIND_PRODUCER.equals(value)) {
-      kind = Kind.PRODUCER;
+      return Kind.PRODUCER;
     } else if (Tags.SPAN_KIND_CONSUMER.equals(value)) {
-      kind = Kind.CONSUMER;
-    } else {
-      return null;
+      return Kind.CONSUMER;
     }
-    return kind;
-  }
-
-  boolean trySetPeer(brave.Span span, String key, String value) {
-    if (Tags.PEER_SERVICE.getKey().equals(key)) {
-      span.remoteServiceName(value);
-    } else if (Tags.PEER_HOST_IPV4.getKey().equals(key)) {
-      remoteIpV4 = value;
-    } else if (Tags.PEER_HOST_IPV6.getKey().equals(key)) {
-      remoteIpV6 = value;
-    } else {
-      return false;
+    return null;
+  }
+
+  static String ipv4String(Object ipv4) {
+    if (ipv4 instanceof String) return (String) ipv4;
+    int ip = ((Number) ipv4).intValue();
+    char[] buf = new char[15];
+    int pos = 0;
+    for (int shift = 24; shift >= 0; shift -= 8) {
+      int octet = ip >>> shift & 0xff;
+      if (octet >= 100) buf[pos++] = (char) ('0' + octet / 100);
+      if (octet >= 10) buf[pos++] = (char) ('0' + octet / 10 % 10);
+      buf[pos++] = (char) ('0' + octet % 10);
+      if (shift != 0) buf[pos++] = '.';
     }
-    return true;
-  }
-
-  boolean trySetPeer(String key, Number value) {
-    if (Tags.PEER_HOST_IPV4.getKey().equals(key)) {
-      int ipv4 = value.intValue();
-      remoteIpV4 = new StringBuilder()
-          .append(ipv4 >> 24 & 0xff).append('.')
-          .append(ipv4 >> 16 & 0xff).append('.')
-          .append(ipv4 >> 8 & 0xff).append('.')
-          .append(ipv4 & 0xff).toString();
-    } else if (Tags.PEER_PORT.getKey().equals(key)) {
-      remotePort = value.intValue();
-    } else {
-      return false;
+    return new String(buf, 0, pos);
+  }
+
+  /**
+   * Formats a 128-bit address in RFC 5952 canonical form. Values other than {@link BigInteger} are
+   * read as the low 64 bits.
+   */
+  static String ipv6String(Object ipv6) {
+    if (ipv6 instanceof String) return (String) ipv6;
+    Number number = (Number) ipv6;
+    long high =
+        number instanceof BigInteger ? ((BigInteger) number).shiftRight(64).longValue() : 0L;
+    long low = number.longValue();
+
+    int[] groups = new int[8];
+    for (int i = 0; i < 4; i++) {
+      groups[i] = (int) (high >>> (48 - 16 * i)) & 0xffff;
+      groups[i + 4] = (int) (low >>> (48 - 16 * i)) & 0xffff;
     }
-    return true;
+
+    // the longest run of at least two zero groups is compressed, preferring the first on a tie
+    int zeroStart = -1, zeroLength = 0;
+    for (int i = 0; i < 8; ) {
+      if (groups[i] != 0) {
+        i++;
+        continue;
+      }
+      int j = i;
+      while (j < 8 && groups[j] == 0) j++;
+      if (j - i > zeroLength && j - i > 1) {
+        zeroStart = i;
+        zeroLength = j - i;
+      }
+      i = j;
+    }
+
+    char[] buf = new char[39];
+    int pos = 0;
+    for (int i = 0; i < 8; i++) {
+      if (i == zeroStart) {
+        buf[pos++] = ':';
+        buf[pos++] = ':';
+        i += zeroLength - 1;
+        continue;
+      }
+      if (pos != 0 && buf[pos - 1] != ':') buf[pos++] = ':';
+      int group = groups[i];
+      boolean leading = true;
+      for (int shift = 12; shift >= 0; shift -= 4) {
+        int nibble = group >>> shift & 0xf;
+        if (leading && nibble == 0 && shift != 0) continue;
+        leading = false;
+        buf[pos++] = HEX_DIGITS[nibble];
+      }
+    }
+    return new String(buf, 0, pos);
   }
 
+  static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
   void trySetRemoteIpAndPort() {
-    if (remoteIpV4 != null) delegate.remoteIpAndPort(remoteIpV4, remotePort);
-    if (remoteIpV6 != null) delegate.remoteIpAndPort(remoteIpV6, remotePort);
+    if (remoteIpV4 != null) delegate.remoteIpAndPort(ipv4String(remoteIpV4), remotePort);
+    if (remoteIpV6 != null) delegate.remoteIpAndPort(ipv6String(remoteIpV6), remotePort);
   }
 
   @Override public String toString() {
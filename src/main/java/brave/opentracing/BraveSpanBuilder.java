@@ -13,6 +13,7 @@
  */
 package brave.opentracing;
 
+import brave.Span.Kind;
 import brave.Tracing;
 import brave.propagation.CurrentTraceContext;
 import brave.propagation.TraceContext;
@@ -23,10 +24,7 @@ import io.opentracing.SpanContext;
 import io.opentracing.Tracer;
 import io.opentracing.tag.Tag;
 import io.opentracing.tag.Tags;
-import java.util.LinkedHashMap;
-import java.util.Map;
-
-import static io.opentracing.tag.Tags.SAMPLING_PRIORITY;
+import java.util.Arrays;
 
 /**
  * Uses by the underlying {@linkplain brave.Tracer} to create a {@linkplain BraveSpan} wrapped
@@ -39,19 +37,37 @@ import static io.opentracing.tag.Tags.SAMPLING_PRIORITY;
  * defined.
  */
 public class BraveSpanBuilder implements Tracer.SpanBuilder {
+  final Tracing tracing;
   final brave.Tracer tracer;
   final CurrentTraceContext currentTraceContext;
-  final Map<String, String> tags = new LinkedHashMap<>();
+  final LogFieldsFormatter logFieldsFormatter;
+  final BraveTracerMetrics metrics;
+  final LeakDetector leakDetector;
+  /**
+   * Pending tags as key, value pairs. Allocated on first use, as many spans have no tags. Values
+   * are strings or numbers, and numbers are only formatted when the span is recorded.
+   */
+  Object[] tags;
+  int tagCount;
 
   String operationName;
   long timestamp;
+  Kind kind;
+  TraceContextOrSamplingFlags samplingFlags = TraceContextOrSamplingFlags.EMPTY;
+  String remoteServiceName;
+  Object remoteIpV4, remoteIpV6; // String or Number, see BraveSpan.trySetRemoteIpAndPort
   int remotePort;
   BraveSpanContext reference;
   boolean ignoreActiveSpan = false;
 
-  BraveSpanBuilder(Tracing tracing, String operationName) {
+  BraveSpanBuilder(Tracing tracing, LogFieldsFormatter logFieldsFormatter,
+      BraveTracerMetrics metrics, LeakDetector leakDetector, String operationName) {
+    this.tracing = tracing;
     this.tracer = tracing.tracer();
     this.currentTraceContext = tracing.currentTraceContext();
+    this.logFieldsFormatter = logFieldsFormatter;
+    this.metrics = metrics;
+    this.leakDetector = leakDetector;
     this.operationName = operationName;
   }
 
@@ -72,19 +88,75 @@ public class BraveSpanBuilder implements Tracer.SpanBuilder {
   }
 
   @Override public BraveSpanBuilder withTag(String key, String value) {
-    tags.put(key, value);
+    switch (BraveSpan.specialTag(key)) {
+      case BraveSpan.TAG_SPAN_KIND:
+        kind = BraveSpan.parseKind(value);
+        if (kind == null) break; // added as a tag, like when the span is started
+        removeTag(key); // the last value set wins, even if an earlier one was invalid
+        return this;
+      case BraveSpan.TAG_PEER_SERVICE:
+        remoteServiceName = value;
+        return this;
+      case BraveSpan.TAG_PEER_HOST_IPV4:
+        remoteIpV4 = value;
+        return this;
+      case BraveSpan.TAG_PEER_HOST_IPV6:
+        remoteIpV6 = value;
+        return this;
+      case BraveSpan.TAG_SAMPLING_PRIORITY:
+        samplingFlags = flagsFromSamplingPriority(value);
+        break;
+    }
+    addTag(key, value);
     return this;
   }
 
+  void addTag(String key, Object value) {
+    if (tags == null) {
+      tags = new Object[8];
+    } else if (tagCount == tags.length) {
+      tags = Arrays.copyOf(tags, tagCount * 2);
+    }
+    tags[tagCount++] = key;
+    tags[tagCount++] = value;
+  }
+
+  void removeTag(String key) {
+    for (int i = 0; i < tagCount; ) {
+      if (!key.equals(tags[i])) {
+        i += 2;
+        continue;
+      }
+      System.arraycopy(tags, i + 2, tags, i, tagCount - i - 2);
+      tagCount -= 2;
+      tags[tagCount] = tags[tagCount + 1] = null;
+    }
+  }
+
   @Override public BraveSpanBuilder withTag(String key, boolean value) {
-    if (Tags.ERROR.getKey().equals(key) && !value) return this;
+    if (!value && BraveSpan.specialTag(key) == BraveSpan.TAG_ERROR) return this;
     return withTag(key, Boolean.toString(value));
   }
 
   @Override public BraveSpanBuilder withTag(String key, Number value) {
-    if (Tags.PEER_PORT.getKey().equals(key)) {
-      remotePort = value.intValue();
-      return this;
+    if (value == null) throw new NullPointerException("value == null");
+    switch (BraveSpan.specialTag(key)) {
+      case BraveSpan.TAG_PEER_PORT:
+        remotePort = value.intValue();
+        return this;
+      case BraveSpan.TAG_PEER_HOST_IPV4:
+        remoteIpV4 = value;
+        return this;
+      case BraveSpan.TAG_PEER_HOST_IPV6:
+        remoteIpV6 = value;
+        return this;
+      case BraveSpan.TAG_SAMPLING_PRIORITY:
+        samplingFlags = flagsFromSamplingPriority(value.intValue());
+        addTag(key, value);
+        return this;
+      case BraveSpan.TAG_OTHER:
+        addTag(key, value);
+        return this;
     }
     return withTag(key, value.toString());
   }
@@ -109,8 +181,32 @@ public class BraveSpanBuilder implements Tracer.SpanBuilder {
   }
 
   @Override public BraveSpan start() {
-    boolean server = Tags.SPAN_KIND_SERVER.equals(tags.get(Tags.SPAN_KIND.getKey()));
+    return start(nextSpan(kind == Kind.SERVER));
+  }
+
+  /**
+   * Starts the given count of spans, each a sibling of the others. The parent is resolved once,
+   * and tags are formatted at most once, when the first recorded sibling starts, as all siblings
+   * share them. Siblings are clients unless another kind was set.
+   */
+  BraveSpan[] startSiblings(int count) {
+    if (kind == null) kind = Kind.CLIENT;
+    if (kind == Kind.SERVER) {
+      throw new IllegalArgumentException("siblings cannot join the same server span");
+    }
+    BraveSpan[] result = new BraveSpan[count];
+    if (count == 0) return result;
+    brave.Span first = nextSpan(false);
+    TraceContext parent = reference != null ? reference.unwrap() : null;
+    result[0] = start(first);
+    for (int i = 1; i < count; i++) {
+      // When there's no complete parent, siblings share the extraction result or are new traces.
+      result[i] = start(parent != null ? tracer.newChild(parent) : nextSpan(false));
+    }
+    return result;
+  }
 
+  brave.Span nextSpan(boolean server) {
     // Handle active span ignoring
     CurrentTraceContext.Scope scope = ignoreActiveSpan ?
         currentTraceContext.newScope(null) :
@@ -128,7 +224,7 @@ public class BraveSpanBuilder implements Tracer.SpanBuilder {
       if (reference == null) {
         // adjust sampling decision, this reflects Zipkin's "before the fact" sampling policy
         // https://github.com/openzipkin/brave/tree/master/brave#sampling
-        span = tracer.nextSpan(flagsFromSamplingPriority(tags.get(SAMPLING_PRIORITY.getKey())));
+        span = tracer.nextSpan(samplingFlags);
       } else if ((context = reference.unwrap()) != null) {
         // Zipkin's default is to share a span ID between the client and the server in an RPC.
         // When we start a server span with a parent, we assume the "parent" is actually the
@@ -141,12 +237,38 @@ public class BraveSpanBuilder implements Tracer.SpanBuilder {
     } finally {
       scope.close();
     }
+    return span;
+  }
 
+  BraveSpan start(brave.Span span) {
     if (operationName != null) span.name(operationName);
-    BraveSpan result = new BraveSpan(tracer, span);
-    result.remotePort = remotePort;
-    for (Map.Entry<String, String> tag : tags.entrySet()) {
-      result.setTag(tag.getKey(), tag.getValue());
+    metrics.spansStarted.increment();
+    // Sampling flags only apply to new traces, as otherwise the parent's decision is used.
+    if (reference == null && Boolean.FALSE.equals(samplingFlags.sampled())) {
+      metrics.spansDowngraded.increment();
+    }
+    BraveSpan result = BraveSpan.create(tracing, logFieldsFormatter, metrics, span, true);
+    result.leak = leakDetector.trackSpan(result, operationName);
+    if (kind != null) {
+      span.kind(kind);
+      result.context.kind = kind; // needed to inject, even if the span isn't recorded
+    }
+    if (!span.isNoop()) {
+      if (remoteServiceName != null) span.remoteServiceName(remoteServiceName);
+      result.remoteIpV4 = remoteIpV4;
+      result.remoteIpV6 = remoteIpV6;
+      result.remotePort = remotePort;
+      // Special tags were handled as they were added, so the rest go directly to the delegate.
+      for (int i = 0; i < tagCount; i += 2) {
+        String value;
+        try {
+          value = tags[i + 1].toString();
+        } catch (RuntimeException e) {
+          continue; // drop the tag, like BraveSpan.setTag(String, Number)
+        }
+        tags[i + 1] = value; // so that siblings don't format it again
+        span.tag((String) tags[i], value);
+      }
     }
 
     if (timestamp != 0) {
@@ -171,14 +293,17 @@ public class BraveSpanBuilder implements Tracer.SpanBuilder {
   static TraceContextOrSamplingFlags flagsFromSamplingPriority(String samplingPriorityString) {
     if (samplingPriorityString == null) return TraceContextOrSamplingFlags.EMPTY;
     try {
-      int samplingPriority = Integer.parseInt(samplingPriorityString);
-      if (samplingPriority == 0) {
-        return TraceContextOrSamplingFlags.NOT_SAMPLED;
-      } else if (samplingPriority > 0) {
-        return TraceContextOrSamplingFlags.SAMPLED;
-      }
+      return flagsFromSamplingPriority(Integer.parseInt(samplingPriorityString));
     } catch (NumberFormatException ex) {
-      // ignore
+      return TraceContextOrSamplingFlags.EMPTY;
+    }
+  }
+
+  static TraceContextOrSamplingFlags flagsFromSamplingPriority(int samplingPriority) {
+    if (samplingPriority == 0) {
+      return TraceContextOrSamplingFlags.NOT_SAMPLED;
+    } else if (samplingPriority > 0) {
+      return TraceContextOrSamplingFlags.SAMPLED;
     }
     return TraceContextOrSamplingFlags.EMPTY;
   }
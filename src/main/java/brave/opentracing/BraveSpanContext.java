@@ -16,11 +16,18 @@ package brave.opentracing;
 import brave.Span;
 import brave.baggage.BaggageField;
 import brave.baggage.BaggagePropagation;
+import brave.internal.Nullable;
+import brave.opentracing.TextMapPropagation.EncodedHeaders;
 import brave.propagation.TraceContext;
+import brave.propagation.TraceContext.Injector;
 import brave.propagation.TraceContextOrSamplingFlags;
 import io.opentracing.SpanContext;
 import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMapInject;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 /**
  * Holds the {@linkplain TraceContext} used by the underlying {@linkplain brave.Tracer}, or an {link
@@ -46,8 +53,32 @@ public abstract class BraveSpanContext implements SpanContext {
    */
   public abstract TraceContext unwrap();
 
-  /** Returns empty unless {@link BaggagePropagation} is in use */
-  @Override public abstract Iterable<Map.Entry<String, String>> baggageItems();
+  /**
+   * Returns empty unless {@link BaggagePropagation} is in use. This is a read-only view over the
+   * baggage of this context, so values updated later are visible.
+   */
+  @Override public Iterable<Map.Entry<String, String>> baggageItems() {
+    return baggage();
+  }
+
+  /**
+   * Returns the value of the baggage field with the given name, or null if it has no value. Unlike
+   * {@link BaggageField#getByName(TraceContext, String)}, this doesn't allocate.
+   *
+   * <p>Returns null unless {@link BaggagePropagation} is in use.
+   */
+  @Nullable public String getBaggageItem(String name) {
+    return baggage().get(name);
+  }
+
+  /** Baggage of this context, resolved on first use, as the fields of a context don't change. */
+  BaggageItems baggage() {
+    BaggageItems result = baggage;
+    if (result == null) baggage = result = new BaggageItems(baggageContext());
+    return result;
+  }
+
+  abstract TraceContextOrSamplingFlags baggageContext();
 
   static BraveSpanContext create(TraceContext context) {
     return new Complete(context);
@@ -61,6 +92,13 @@ public abstract class BraveSpanContext implements SpanContext {
 
   static final class Complete extends BraveSpanContext {
     final TraceContext context;
+    /**
+     * Headers of the last injector used, as gateways often inject the same context several times.
+     * When sampling priority is set to 0, {@link BraveSpan} replaces its context, which drops this.
+     */
+    volatile EncodedHeaders encodedHeaders;
+    /** The injector last used without encoding, so that a context injected once isn't encoded. */
+    volatile Injector<TextMapInject> injectedWith;
 
     Complete(TraceContext context) {
       this.context = context;
@@ -70,6 +108,27 @@ public abstract class BraveSpanContext implements SpanContext {
       return context;
     }
 
+    /**
+     * Injects directly the first time, and encodes headers on the second injection with the same
+     * injector. This way, contexts only injected once don't pay for encoding.
+     */
+    void inject(Injector<TextMapInject> injector, TextMapInject carrier) {
+      EncodedHeaders headers = encodedHeaders;
+      if (headers == null || headers.injector != injector) {
+        if (injectedWith != injector) {
+          injectedWith = injector;
+          injector.inject(context, carrier);
+          return;
+        }
+        encodedHeaders = headers = EncodedHeaders.encode(injector, context);
+      }
+      headers.writeTo(carrier);
+    }
+
+    @Override TraceContextOrSamplingFlags baggageContext() {
+      return TraceContextOrSamplingFlags.create(context);
+    }
+
     // notice: no sampling or parent span ID here!
     @Override public String toTraceId() {
       return context.traceIdString();
@@ -78,10 +137,6 @@ public abstract class BraveSpanContext implements SpanContext {
     @Override public String toSpanId() {
       return context.spanIdString();
     }
-
-    @Override public Iterable<Map.Entry<String, String>> baggageItems() {
-      return BaggageField.getAllValues(context).entrySet();
-    }
   }
 
   static final class Incomplete extends BraveSpanContext {
@@ -99,6 +154,10 @@ public abstract class BraveSpanContext implements SpanContext {
       return extractionResult.context();
     }
 
+    @Override TraceContextOrSamplingFlags baggageContext() {
+      return extractionResult;
+    }
+
     // notice: no sampling or parent span ID here!
     @Override public String toTraceId() {
       TraceContext context = extractionResult.context();
@@ -109,14 +168,93 @@ public abstract class BraveSpanContext implements SpanContext {
       TraceContext context = extractionResult.context();
       return context != null ? context.spanIdString() : null;
     }
+  }
+
+  /**
+   * Read-only view of the baggage of a context. Fields are resolved once, so that reading values
+   * doesn't build a map each time, as {@link BaggageField#getAllValues(TraceContext)} does.
+   *
+   * <p>Entries are kept per field and reused while the value is the same, so that iterating again,
+   * such as on each log statement, only allocates the iterator.
+   */
+  static final class BaggageItems implements Iterable<Map.Entry<String, String>> {
+    final TraceContextOrSamplingFlags context;
+    final BaggageField[] fields;
+    /** Racy, which is safe as entries are immutable. */
+    final SimpleImmutableEntry<String, String>[] entries;
+
+    @SuppressWarnings("unchecked")
+    BaggageItems(TraceContextOrSamplingFlags context) {
+      this.context = context;
+      this.fields = BaggageField.getAll(context).toArray(new BaggageField[0]);
+      this.entries = new SimpleImmutableEntry[fields.length];
+    }
+
+    /** Matches names like {@link BaggageField#getByName(TraceContext, String)}. */
+    @Nullable BaggageField field(String name) {
+      if (name == null) throw new NullPointerException("name == null");
+      name = name.trim(); // only allocates when there's whitespace to trim
+      if (name.isEmpty()) throw new IllegalArgumentException("name is empty");
+      for (BaggageField field : fields) {
+        if (name.equals(field.name())) return field;
+      }
+      return null;
+    }
+
+    @Nullable String get(String name) {
+      BaggageField field = field(name);
+      return field != null ? field.getValue(context) : null;
+    }
+
+    /** Skips fields without a value, like {@link BaggageField#getAllValues(TraceContext)}. */
+    @Override public Iterator<Map.Entry<String, String>> iterator() {
+      return new Iterator<Map.Entry<String, String>>() {
+        int index;
+        Map.Entry<String, String> next = advance();
+
+        Map.Entry<String, String> advance() {
+          while (index < fields.length) {
+            int i = index++;
+            String value = fields[i].getValue(context);
+            if (value == null) continue;
+            SimpleImmutableEntry<String, String> entry = entries[i];
+            if (entry == null || !value.equals(entry.getValue())) {
+              entries[i] = entry = new SimpleImmutableEntry<>(fields[i].name(), value);
+            }
+            return entry;
+          }
+          return null;
+        }
+
+        @Override public boolean hasNext() {
+          return next != null;
+        }
+
+        @Override public Map.Entry<String, String> next() {
+          Map.Entry<String, String> result = next;
+          if (result == null) throw new NoSuchElementException();
+          next = advance();
+          return result;
+        }
+
+        @Override public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
 
-    /** Returns empty unless {@link BaggagePropagation} is in use */
-    @Override public Iterable<Map.Entry<String, String>> baggageItems() {
-      return BaggageField.getAllValues(extractionResult).entrySet();
+    @Override public String toString() {
+      StringBuilder result = new StringBuilder("[");
+      for (Map.Entry<String, String> entry : this) {
+        if (result.length() > 1) result.append(", ");
+        result.append(entry.getKey()).append('=').append(entry.getValue());
+      }
+      return result.append(']').toString();
     }
   }
 
   volatile Span.Kind kind;
+  volatile BaggageItems baggage;
 
   BraveSpanContext() {
   }
@@ -13,35 +13,52 @@
  */
 package brave.opentracing;
 
-import brave.Span.Kind;
 import brave.Tracing;
 import brave.baggage.BaggagePropagation;
 import brave.internal.Nullable;
+import brave.opentracing.BinaryPropagation.B3SingleCodec;
+import brave.opentracing.BinaryPropagation.BinaryCodec;
+import brave.opentracing.BinaryPropagation.CompactCodec;
+import brave.opentracing.BraveSpanContext.Complete;
+import brave.opentracing.BraveTracerMetrics.Counter;
+import brave.opentracing.TextMapPropagation.PropagationKeys;
 import brave.opentracing.TextMapPropagation.TextMapExtractor;
-import brave.propagation.B3SingleFormat;
+import brave.opentracing.TextMapPropagation.TextMapInjectors;
 import brave.propagation.CurrentTraceContext;
 import brave.propagation.Propagation;
 import brave.propagation.TraceContext;
-import brave.propagation.TraceContext.Extractor;
 import brave.propagation.TraceContext.Injector;
 import brave.propagation.TraceContextOrSamplingFlags;
 import io.opentracing.ScopeManager;
 import io.opentracing.Span;
 import io.opentracing.SpanContext;
 import io.opentracing.Tracer;
+import io.opentracing.propagation.Binary;
 import io.opentracing.propagation.BinaryExtract;
 import io.opentracing.propagation.BinaryInject;
 import io.opentracing.propagation.Format;
 import io.opentracing.propagation.TextMap;
 import io.opentracing.propagation.TextMapExtract;
 import io.opentracing.propagation.TextMapInject;
-import java.nio.charset.Charset;
+import io.opentracing.tag.Tags;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
-import java.util.Locale;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 
+import static io.opentracing.propagation.Format.Builtin.BINARY;
+import static io.opentracing.propagation.Format.Builtin.BINARY_EXTRACT;
+import static io.opentracing.propagation.Format.Builtin.BINARY_INJECT;
+import static io.opentracing.propagation.Format.Builtin.HTTP_HEADERS;
+import static io.opentracing.propagation.Format.Builtin.TEXT_MAP;
 import static io.opentracing.propagation.Format.Builtin.TEXT_MAP_EXTRACT;
 import static io.opentracing.propagation.Format.Builtin.TEXT_MAP_INJECT;
 
@@ -66,7 +83,7 @@ import static io.opentracing.propagation.Format.Builtin.TEXT_MAP_INJECT;
  * <h3>Propagation</h3>
  * This uses the same propagation as defined in zipkin for text formats. <a
  * href="https://github.com/openzipkin/b3-propagation#single-header">B3 Single</a> is used for
- * binary formats.
+ * binary formats, unless {@link Builder#binaryPropagation(Format)} is configured.
  *
  * @see BraveSpan
  * @see Propagation
@@ -91,23 +108,24 @@ public final class BraveTracer implements Tracer {
    * ScopeManager}.
    */
   public static Builder newBuilder(Tracing brave4) {
-    // This is the only public entrypoint into the brave-opentracing bridge. The following will
-    // raise an exception when using an incompatible version of opentracing-api. Notably, this
-    // unwraps ExceptionInInitializerError to avoid confusing users, as this is an implementation
-    // detail of the version singleton.
-    try {
-      OpenTracingVersion.get();
-    } catch (ExceptionInInitializerError e) {
-      if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
-      throw e;
-    }
     return new Builder(brave4);
   }
 
+  /** Versions of opentracing-api this bridge works with. */
+  public enum OpenTracingApiVersion {
+    V0_32, V0_33
+  }
+
   public static final class Builder {
     Tracing tracing;
 
     Map<Format<TextMap>, Propagation<String>> formatToPropagation = new LinkedHashMap<>();
+    Set<Format<Binary>> binaryFormats = new LinkedHashSet<>();
+    Map<Class<?>, LogValueFormatter<?>> logValueFormatters = new LinkedHashMap<>();
+    boolean annotateExecutorQueueWait;
+    float leakDetectionRate;
+    int extractionCacheSize;
+    OpenTracingVersion version;
 
     Builder(Tracing tracing) {
       if (tracing == null) throw new NullPointerException("brave tracing component == null");
@@ -133,7 +151,7 @@ public final class BraveTracer implements Tracer {
      * }</pre>
      */
     // special named method because we can't overload later since both format and propagation only
-    // differ on generic types. Punting on Format<ByteBuffer> until someone asks for it.
+    // differ on generic types.
     public Builder textMapPropagation(Format<TextMap> format, Propagation<String> propagation) {
       if (format == null) throw new NullPointerException("format == null");
       if (propagation == null) throw new NullPointerException("propagation == null");
@@ -141,55 +159,199 @@ public final class BraveTracer implements Tracer {
       return this;
     }
 
+    /**
+     * By default, binary formats use
+     * <a href="https://github.com/openzipkin/b3-propagation#single-header">B3 Single</a>, which
+     * carries no baggage. This switches the format to a compact encoding which writes the trace
+     * context as raw bytes, followed by the values of baggage fields. The fields are the remote
+     * ones configured in {@link Tracing#propagationFactory()}.
+     *
+     * <p>Both sides of the connection need the same configuration, as the compact encoding is not
+     * B3. Configuring {@link Format.Builtin#BINARY} also applies to {@link
+     * Format.Builtin#BINARY_INJECT} and {@link Format.Builtin#BINARY_EXTRACT}.
+     *
+     * <p>For example, to carry baggage along with the trace context:
+     * <pre>{@code
+     * builder.binaryPropagation(Format.Builtin.BINARY);
+     * }</pre>
+     */
+    public Builder binaryPropagation(Format<Binary> format) {
+      if (format == null) throw new NullPointerException("format == null");
+      binaryFormats.add(format);
+      return this;
+    }
+
+    /**
+     * Formats values of the given type in {@link Span#log(Map)} fields, instead of calling {@link
+     * Object#toString()}. For example, this can shorten exceptions to their type and message.
+     *
+     * <p>Fields are only formatted when the span is finished and recorded. When a value matches
+     * several types, the formatter added first wins.
+     */
+    public <T> Builder logValueFormatter(Class<T> type, LogValueFormatter<? super T> formatter) {
+      if (type == null) throw new NullPointerException("type == null");
+      if (formatter == null) throw new NullPointerException("formatter == null");
+      logValueFormatters.put(type, formatter);
+      return this;
+    }
+
+    /**
+     * When true, tasks submitted to a {@linkplain BraveTracer#wrap(Executor) wrapped executor}
+     * annotate the span that was active when they were submitted with "executor.queued" and
+     * "executor.started". The time between them is how long the task waited in the queue, which
+     * shows thread pool saturation. Defaults to false.
+     *
+     * <p>Only recorded spans activated with {@link BraveTracer#activateSpan(Span)} are annotated,
+     * and only when they haven't finished by the time the task starts. Scheduled tasks aren't
+     * annotated, as their queue wait includes the requested delay.
+     */
+    public Builder annotateExecutorQueueWait(boolean annotateExecutorQueueWait) {
+      this.annotateExecutorQueueWait = annotateExecutorQueueWait;
+      return this;
+    }
+
+    /**
+     * Logs a warning when a span is garbage collected before it is finished, or a scope before it
+     * is closed, including where it was created. Defaults to zero, which disables leak detection.
+     *
+     * <p>Only the given fraction of spans and their scopes are tracked, so this can stay on in
+     * production with a low rate, such as 0.001. The stack trace is only captured for those.
+     * Leaks are noticed when the next instance is tracked, or when this tracer is closed.
+     *
+     * @param rate between 0 and 1, inclusive
+     */
+    public Builder leakDetectionRate(float rate) {
+      if (rate < 0.0f || rate > 1.0f) {
+        throw new IllegalArgumentException("rate should be between 0 and 1: was " + rate);
+      }
+      this.leakDetectionRate = rate;
+      return this;
+    }
+
+    /**
+     * Caches up to the given count of text map extraction results, keyed on the values of
+     * propagation headers. When carriers often repeat the same headers, such as records of a batch
+     * or retried requests, this avoids parsing them again. Defaults to zero, which disables the
+     * cache.
+     *
+     * <p>Results that carry baggage or other extra state are not cached, as that state can be
+     * updated after extraction. Formats that use the same propagation, such as the builtin text map
+     * formats by default, share one cache of this size. {@link BraveTracer#metrics()} counts hits,
+     * misses and evictions, to help choose the size.
+     */
+    public Builder extractionCacheSize(int extractionCacheSize) {
+      if (extractionCacheSize < 0) {
+        throw new IllegalArgumentException("extractionCacheSize < 0: " + extractionCacheSize);
+      }
+      this.extractionCacheSize = extractionCacheSize;
+      return this;
+    }
+
+    /**
+     * Uses the given version of opentracing-api, instead of detecting it with reflection when
+     * building the tracer. Set this when the version is known, to shorten startup.
+     */
+    public Builder openTracingApiVersion(OpenTracingApiVersion version) {
+      if (version == null) throw new NullPointerException("version == null");
+      this.version = OpenTracingVersion.of(version);
+      return this;
+    }
+
     public BraveTracer build() {
       return new BraveTracer(this);
     }
   }
 
-  final Map<Format<?>, Injector<TextMapInject>> formatToInjector = new LinkedHashMap<>();
-  final Map<Format<?>, Injector<TextMapInject>> formatToClientInjector = new LinkedHashMap<>();
-  final Map<Format<?>, Injector<TextMapInject>> formatToProducerInjector = new LinkedHashMap<>();
-  final Map<Format<?>, Injector<TextMapInject>> formatToConsumerInjector = new LinkedHashMap<>();
-  final Map<Format<?>, Extractor<TextMapExtract>> formatToExtractor = new LinkedHashMap<>();
-  // When baggage or similar are in use, an empty result != TraceContextOrSamplingFlags.EMPTY
-  final Set<TraceContextOrSamplingFlags> emptyExtractions = new LinkedHashSet<>();
+  /**
+   * Formats a value of a {@link Span#log(Map)} field.
+   *
+   * @see Builder#logValueFormatter(Class, LogValueFormatter)
+   */
+  public interface LogValueFormatter<T> {
+    /** Appends the formatted value to the result, which is the annotation being built. */
+    void formatTo(T value, StringBuilder result);
+  }
+
+  final OpenTracingVersion version;
+  final LogFieldsFormatter logFieldsFormatter;
+  final Map<Format<?>, TextMapInjectors> formatToInjectors = new LinkedHashMap<>();
+  // Builtin formats are resolved by identity, to avoid a map lookup on each injection
+  final TextMapInjectors httpHeadersInjectors, textMapInjectors, textMapInjectInjectors;
+  final Map<Format<?>, TextMapExtractor> formatToExtractor = new LinkedHashMap<>();
+  final Map<Format<?>, BinaryCodec> formatToBinaryCodec = new LinkedHashMap<>();
+  final BinaryCodec binaryCodec, binaryInjectCodec, binaryExtractCodec;
+  final BraveExecutors executors;
+  final BraveTracerMetrics metrics = new BraveTracerMetrics();
+  final LeakDetector leakDetector;
 
   BraveTracer(Builder b) {
     tracing = b.tracing;
     delegate = b.tracing.tracer();
-    scopeManager = OpenTracingVersion.get().scopeManager(b.tracing);
-    Set<String> lcPropagationKeys = new LinkedHashSet<>();
-    for (String keyName : BaggagePropagation.allKeyNames(tracing.propagation())) {
-      lcPropagationKeys.add(keyName.toLowerCase(Locale.ROOT));
-    }
+    executors = new BraveExecutors(b.tracing, b.annotateExecutorQueueWait);
+    version = b.version != null ? b.version : detectVersion();
+    logFieldsFormatter = LogFieldsFormatter.create(b.logValueFormatters);
+    leakDetector = LeakDetector.create(b.leakDetectionRate);
+    scopeManager = version.scopeManager(b.tracing, logFieldsFormatter, metrics, leakDetector);
+    PropagationKeys propagationKeys =
+        PropagationKeys.create(BaggagePropagation.allKeyNames(tracing.propagation()));
+    // Results depend on the propagation that parsed them, so only formats sharing it share a cache
+    Map<Propagation<String>, ExtractionCache> extractionCaches = new IdentityHashMap<>();
     for (Map.Entry<Format<TextMap>, Propagation<String>> entry : b.formatToPropagation.entrySet()) {
-      formatToInjector.put(entry.getKey(),
-          entry.getValue().injector(TextMapPropagation.SETTER));
-      formatToClientInjector.put(entry.getKey(),
-          entry.getValue().injector(TextMapPropagation.REMOTE_SETTER.CLIENT));
-      formatToProducerInjector.put(entry.getKey(),
-          entry.getValue().injector(TextMapPropagation.REMOTE_SETTER.PRODUCER));
-      formatToConsumerInjector.put(entry.getKey(),
-          entry.getValue().injector(TextMapPropagation.REMOTE_SETTER.CONSUMER));
+      formatToInjectors.put(entry.getKey(), new TextMapInjectors(entry.getValue()));
       formatToExtractor.put(entry.getKey(),
-          new TextMapExtractor(entry.getValue(), lcPropagationKeys, TextMapPropagation.GETTER));
-      emptyExtractions.add(entry.getValue().extractor((c, k) -> null).extract(Boolean.TRUE));
+          new TextMapExtractor(entry.getValue(), propagationKeys,
+              extractionCache(b, extractionCaches, entry.getValue())));
     }
 
     // Now, go back and make sure the special inject/extract forms work
     for (Propagation<String> propagation : b.formatToPropagation.values()) {
-      formatToInjector.put(TEXT_MAP_INJECT,
-          propagation.injector(TextMapPropagation.SETTER));
-      formatToClientInjector.put(TEXT_MAP_INJECT,
-          propagation.injector(TextMapPropagation.REMOTE_SETTER.CLIENT));
-      formatToProducerInjector.put(TEXT_MAP_INJECT,
-          propagation.injector(TextMapPropagation.REMOTE_SETTER.PRODUCER));
-      formatToConsumerInjector.put(TEXT_MAP_INJECT,
-          propagation.injector(TextMapPropagation.REMOTE_SETTER.CONSUMER));
-      formatToExtractor.put(TEXT_MAP_EXTRACT,
-          new TextMapExtractor(propagation, lcPropagationKeys, TextMapPropagation.GETTER));
-      emptyExtractions.add(propagation.extractor((c, k) -> null).extract(Boolean.TRUE));
+      formatToInjectors.put(TEXT_MAP_INJECT, new TextMapInjectors(propagation));
+      formatToExtractor.put(TEXT_MAP_EXTRACT, new TextMapExtractor(propagation, propagationKeys,
+          extractionCache(b, extractionCaches, propagation)));
+    }
+    httpHeadersInjectors = formatToInjectors.get(HTTP_HEADERS);
+    textMapInjectors = formatToInjectors.get(TEXT_MAP);
+    textMapInjectInjectors = formatToInjectors.get(TEXT_MAP_INJECT);
+
+    BinaryCodec compactCodec = b.binaryFormats.isEmpty() ? null
+        : CompactCodec.create(tracing.propagationFactory(), tracing.propagation());
+    for (Format<Binary> format : b.binaryFormats) {
+      formatToBinaryCodec.put(format, compactCodec);
+      if (format == BINARY) {
+        formatToBinaryCodec.put(BINARY_INJECT, compactCodec);
+        formatToBinaryCodec.put(BINARY_EXTRACT, compactCodec);
+      }
     }
+    binaryCodec = binaryCodec(formatToBinaryCodec.get(BINARY));
+    binaryInjectCodec = binaryCodec(formatToBinaryCodec.get(BINARY_INJECT));
+    binaryExtractCodec = binaryCodec(formatToBinaryCodec.get(BINARY_EXTRACT));
+  }
+
+  @Nullable ExtractionCache extractionCache(Builder b,
+      Map<Propagation<String>, ExtractionCache> extractionCaches, Propagation<String> propagation) {
+    if (b.extractionCacheSize == 0) return null;
+    ExtractionCache result = extractionCaches.get(propagation);
+    if (result == null) {
+      result = new ExtractionCache(b.extractionCacheSize, metrics);
+      extractionCaches.put(propagation, result);
+    }
+    return result;
+  }
+
+  static OpenTracingVersion detectVersion() {
+    // The following will raise an exception when using an incompatible version of opentracing-api.
+    // Notably, this unwraps ExceptionInInitializerError to avoid confusing users, as this is an
+    // implementation detail of the version singleton.
+    try {
+      return OpenTracingVersion.get();
+    } catch (ExceptionInInitializerError e) {
+      if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+      throw e;
+    }
+  }
+
+  static BinaryCodec binaryCodec(@Nullable BinaryCodec codec) {
+    return codec != null ? codec : B3SingleCodec.INSTANCE;
   }
 
   /** Returns the underlying {@link Tracing} instance used to configure this. */
@@ -197,6 +359,35 @@ public final class BraveTracer implements Tracer {
     return tracing;
   }
 
+  /** Returns counts of what this tracer has done so far, which can be exposed over JMX. */
+  public BraveTracerMetrics metrics() {
+    return metrics;
+  }
+
+  /**
+   * Returns an executor which runs each task in the trace context that was current when it was
+   * submitted. This is cheaper than calling {@link #activeSpan()} and {@link #activateSpan(Span)}
+   * in each task, as only the underlying {@link TraceContext} is captured.
+   *
+   * @see Builder#annotateExecutorQueueWait(boolean)
+   */
+  public Executor wrap(Executor executor) {
+    if (executor == null) throw new NullPointerException("executor == null");
+    return executors.wrap(executor);
+  }
+
+  /** Like {@link #wrap(Executor)}, except for all methods that accept tasks. */
+  public ExecutorService wrap(ExecutorService executorService) {
+    if (executorService == null) throw new NullPointerException("executorService == null");
+    return executors.wrap(executorService);
+  }
+
+  /** Like {@link #wrap(Executor)}, except for all methods that accept tasks. */
+  public ScheduledExecutorService wrap(ScheduledExecutorService executorService) {
+    if (executorService == null) throw new NullPointerException("executorService == null");
+    return executors.wrap(executorService);
+  }
+
   @Override public BraveScopeManager scopeManager() {
     return scopeManager;
   }
@@ -210,7 +401,53 @@ public final class BraveTracer implements Tracer {
   }
 
   @Override public BraveSpanBuilder buildSpan(String operationName) {
-    return OpenTracingVersion.get().spanBuilder(this, operationName);
+    return version.spanBuilder(this, operationName);
+  }
+
+  /**
+   * Starts a span per carrier and injects each into its carrier, for example when a request is
+   * scattered to several backends. This is cheaper than calling {@link BraveSpanBuilder#start()}
+   * and {@link #inject(SpanContext, Format, Object)} in a loop, as the parent and injector are
+   * resolved once, and tags are shared by all spans.
+   *
+   * <p>The spans are siblings, configured by the builder, which shouldn't be used afterwards. They
+   * are {@linkplain Tags#SPAN_KIND_CLIENT clients} unless another kind was set. For example:
+   * <pre>{@code
+   * List<BraveSpan> spans = tracer.startAndInject(tracer.buildSpan("get")
+   *     .withTag(Tags.COMPONENT, "scatter"), Format.Builtin.HTTP_HEADERS, carriers);
+   * }</pre>
+   *
+   * @return the started spans, in the same order as the carriers
+   * @throws IllegalArgumentException if the builder is for a server span
+   */
+  public <C> List<BraveSpan> startAndInject(BraveSpanBuilder builder, Format<C> format,
+      List<? extends C> carriers) {
+    if (builder == null) throw new NullPointerException("builder == null");
+    if (format == null) throw new NullPointerException("format == null");
+    if (carriers == null) throw new NullPointerException("carriers == null");
+    BraveSpan[] spans = builder.startSiblings(carriers.size());
+    if (spans.length == 0) return Collections.emptyList();
+
+    Counter injections = metrics.injections.get(format);
+    BinaryCodec codec = null;
+    Injector<TextMapInject> injector = null;
+    for (int i = 0; i < spans.length; i++) {
+      C carrier = carriers.get(i);
+      TraceContext context = spans[i].delegate.context();
+      injections.increment();
+      if (carrier instanceof BinaryInject) {
+        if (codec == null) codec = binaryCodec(format);
+        codec.inject(context, (BinaryInject) carrier);
+        continue;
+      }
+      if (!(carrier instanceof TextMapInject)) {
+        throw new UnsupportedOperationException(carrier + " not instanceof TextMapInject");
+      }
+      // Siblings are injected once each, so encoded headers aren't cached as in inject.
+      if (injector == null) injector = textMapInjectorsOrThrow(format).get(spans[i].context.kind);
+      injector.inject(context, (TextMapInject) carrier);
+    }
+    return Arrays.asList(spans);
   }
 
   /**
@@ -218,27 +455,44 @@ public final class BraveTracer implements Tracer {
    */
   @Override public <C> void inject(SpanContext spanContext, Format<C> format, C carrier) {
     BraveSpanContext braveContext = ((BraveSpanContext) spanContext);
+    metrics.injections.increment(format);
     if (carrier instanceof BinaryInject) {
-      BinaryCodec.INSTANCE.inject(braveContext.unwrap(), (BinaryInject) carrier);
+      binaryCodec(format).inject(braveContext.unwrap(), (BinaryInject) carrier);
       return;
     }
     if (!(carrier instanceof TextMapInject)) {
       throw new UnsupportedOperationException(carrier + " not instanceof TextMapInject");
     }
-    Kind kind = braveContext.kind;
-    Injector<TextMapInject> injector = null;
-    if (Kind.CLIENT.equals(kind)) {
-      injector = formatToClientInjector.get(format);
-    } else if (Kind.PRODUCER.equals(kind)) {
-      injector = formatToProducerInjector.get(format);
-    } else if (Kind.CONSUMER.equals(kind)) {
-      injector = formatToConsumerInjector.get(format);
+    TextMapInjectors injectors = textMapInjectorsOrThrow(format);
+    Injector<TextMapInject> injector = injectors.get(braveContext.kind);
+    if (injectors.cacheable && braveContext instanceof Complete) {
+      ((Complete) braveContext).inject(injector, (TextMapInject) carrier);
+    } else {
+      injector.inject(braveContext.unwrap(), (TextMapInject) carrier);
     }
-    if (injector == null) injector = formatToInjector.get(format);
-    if (injector == null) {
-      throw new UnsupportedOperationException(format + " not in " + formatToInjector.keySet());
+  }
+
+  TextMapInjectors textMapInjectorsOrThrow(Format<?> format) {
+    TextMapInjectors injectors = textMapInjectors(format);
+    if (injectors == null) {
+      throw new UnsupportedOperationException(format + " not in " + formatToInjectors.keySet());
     }
-    injector.inject(braveContext.unwrap(), (TextMapInject) carrier);
+    return injectors;
+  }
+
+  @Nullable TextMapInjectors textMapInjectors(Format<?> format) {
+    if (format == HTTP_HEADERS) return httpHeadersInjectors;
+    if (format == TEXT_MAP) return textMapInjectors;
+    if (format == TEXT_MAP_INJECT) return textMapInjectInjectors;
+    return formatToInjectors.get(format);
+  }
+
+  /** Unconfigured formats with binary carriers use B3 single format, as they did historically. */
+  BinaryCodec binaryCodec(Format<?> format) {
+    if (format == BINARY) return binaryCodec;
+    if (format == BINARY_INJECT) return binaryInjectCodec;
+    if (format == BINARY_EXTRACT) return binaryExtractCodec;
+    return binaryCodec(formatToBinaryCodec.get(format));
   }
 
   /**
@@ -246,41 +500,88 @@ public final class BraveTracer implements Tracer {
    * encoded context in the carrier, or upon error extracting it.
    */
   @Nullable @Override public <C> BraveSpanContext extract(Format<C> format, C carrier) {
+    metrics.extractions.increment(format);
     TraceContextOrSamplingFlags extractionResult;
     if (carrier instanceof BinaryExtract) {
-      extractionResult = BinaryCodec.INSTANCE.extract((BinaryExtract) carrier);
+      extractionResult = extractBinary(binaryCodec(format), (BinaryExtract) carrier);
     } else {
-      Extractor<C> extractor = (Extractor<C>) formatToExtractor.get(format);
-      if (extractor == null) {
-        throw new UnsupportedOperationException(format + " not in " + formatToExtractor.keySet());
-      }
-      extractionResult = extractor.extract(carrier);
+      extractionResult = extractTextMap(textMapExtractor(format), (TextMapExtract) carrier, null);
     }
-    if (emptyExtractions.contains(extractionResult)) return null;
-    return BraveSpanContext.create(extractionResult);
+    return extractionResult != null ? BraveSpanContext.create(extractionResult) : null;
   }
 
-  @Override public void close() {
-    tracing.close();
+  /**
+   * Like {@link #extract(Format, Object)}, except for a batch of carriers, such as records from a
+   * message consumer poll. This is cheaper than extracting in a loop, as the extractor is resolved
+   * once, and scratch state is reused across carriers.
+   *
+   * @return a fixed-size list of extracted contexts, in the same order as the carriers. Elements
+   * are null when their carrier had no context.
+   */
+  public <C> List<BraveSpanContext> extractAll(Format<C> format, Iterable<? extends C> carriers) {
+    if (format == null) throw new NullPointerException("format == null");
+    if (carriers == null) throw new NullPointerException("carriers == null");
+    int sizeHint = carriers instanceof Collection ? ((Collection<?>) carriers).size() : 16;
+    BraveSpanContext[] result = new BraveSpanContext[sizeHint];
+    int count = 0;
+
+    Counter extractions = metrics.extractions.get(format);
+    BinaryCodec codec = null;
+    TextMapExtractor extractor = null;
+    String[] scratch = null;
+    for (C carrier : carriers) {
+      extractions.increment();
+      TraceContextOrSamplingFlags extractionResult;
+      if (carrier instanceof BinaryExtract) {
+        if (codec == null) codec = binaryCodec(format);
+        extractionResult = extractBinary(codec, (BinaryExtract) carrier);
+      } else {
+        if (extractor == null) {
+          extractor = textMapExtractor(format);
+          scratch = new String[extractor.keys.size()];
+        }
+        extractionResult = extractTextMap(extractor, (TextMapExtract) carrier, scratch);
+      }
+      if (count == result.length) result = Arrays.copyOf(result, Math.max(16, count * 2));
+      if (extractionResult != null) result[count] = BraveSpanContext.create(extractionResult);
+      count++;
+    }
+    return Arrays.asList(count == result.length ? result : Arrays.copyOf(result, count));
   }
 
-  // Temporary until https://github.com/openzipkin/brave/issues/928
-  enum BinaryCodec implements Injector<BinaryInject>, Extractor<BinaryExtract> {
-    INSTANCE;
+  TextMapExtractor textMapExtractor(Format<?> format) {
+    TextMapExtractor extractor = formatToExtractor.get(format);
+    if (extractor == null) {
+      throw new UnsupportedOperationException(format + " not in " + formatToExtractor.keySet());
+    }
+    return extractor;
+  }
 
-    final Charset ascii = Charset.forName("US-ASCII");
+  /** Returns null when the carrier has no context, counting it as a miss. */
+  @Nullable TraceContextOrSamplingFlags extractTextMap(TextMapExtractor extractor,
+      TextMapExtract carrier, @Nullable String[] scratch) {
+    TraceContextOrSamplingFlags extractionResult = extractor.extractOrNull(carrier, scratch);
+    if (extractionResult == null) metrics.extractionMisses.increment();
+    return extractionResult;
+  }
 
-    @Override public TraceContextOrSamplingFlags extract(BinaryExtract binaryExtract) {
-      try {
-        return B3SingleFormat.parseB3SingleFormat(ascii.decode(binaryExtract.extractionBuffer()));
-      } catch (RuntimeException e) {
-        return TraceContextOrSamplingFlags.EMPTY;
-      }
+  /** Returns null when the carrier has no context or is malformed, counting it as a miss. */
+  @SuppressWarnings("ReferenceEquality") // codecs return the EMPTY constant, so identity suffices
+  @Nullable TraceContextOrSamplingFlags extractBinary(BinaryCodec codec, BinaryExtract carrier) {
+    TraceContextOrSamplingFlags extractionResult = codec.extractOrNull(carrier);
+    if (extractionResult == null) {
+      metrics.binaryParseFailures.increment();
+      extractionResult = TraceContextOrSamplingFlags.EMPTY;
     }
-
-    @Override public void inject(TraceContext traceContext, BinaryInject binaryInject) {
-      byte[] injected = B3SingleFormat.writeB3SingleFormatAsBytes(traceContext);
-      binaryInject.injectionBuffer(injected.length).put(injected);
+    if (extractionResult == TraceContextOrSamplingFlags.EMPTY) {
+      metrics.extractionMisses.increment();
+      return null;
     }
+    return extractionResult;
+  }
+
+  @Override public void close() {
+    leakDetector.reportLeaks();
+    tracing.close();
   }
 }
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2016-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.opentracing;
+
+import brave.internal.Nullable;
+import io.opentracing.propagation.Format;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static io.opentracing.propagation.Format.Builtin.BINARY;
+import static io.opentracing.propagation.Format.Builtin.BINARY_EXTRACT;
+import static io.opentracing.propagation.Format.Builtin.BINARY_INJECT;
+import static io.opentracing.propagation.Format.Builtin.HTTP_HEADERS;
+import static io.opentracing.propagation.Format.Builtin.TEXT_MAP;
+import static io.opentracing.propagation.Format.Builtin.TEXT_MAP_EXTRACT;
+import static io.opentracing.propagation.Format.Builtin.TEXT_MAP_INJECT;
+
+/**
+ * Counts what the bridge is doing, returned by {@link BraveTracer#metrics()}. Counters are striped
+ * across threads and updated without locks, so they are always on.
+ *
+ * <p>To expose these over JMX, register this with an MBean server:
+ * <pre>{@code
+ * ManagementFactory.getPlatformMBeanServer()
+ *   .registerMBean(tracer.metrics(), new ObjectName("brave.opentracing:type=BraveTracer"));
+ * }</pre>
+ */
+public final class BraveTracerMetrics implements BraveTracerMetricsMXBean {
+  final Counter spansStarted = new Counter(), spansFinished = new Counter(),
+      spansDowngraded = new Counter(), spansAbandoned = new Counter(),
+      activateSpanCalls = new Counter(), activeSpanCalls = new Counter(),
+      extractionMisses = new Counter(), binaryParseFailures = new Counter(),
+      extractionCacheHits = new Counter(), extractionCacheMisses = new Counter(),
+      extractionCacheEvictions = new Counter();
+  final FormatCounters injections = new FormatCounters(), extractions = new FormatCounters();
+
+  BraveTracerMetrics() {
+  }
+
+  @Override public long getSpansStarted() {
+    return spansStarted.get();
+  }
+
+  @Override public long getSpansFinished() {
+    return spansFinished.get();
+  }
+
+  @Override public long getSpansDowngraded() {
+    return spansDowngraded.get();
+  }
+
+  @Override public long getSpansAbandoned() {
+    return spansAbandoned.get();
+  }
+
+  @Override public long getActivateSpanCalls() {
+    return activateSpanCalls.get();
+  }
+
+  @Override public long getActiveSpanCalls() {
+    return activeSpanCalls.get();
+  }
+
+  @Override public Map<String, Long> getInjections() {
+    return injections.byName();
+  }
+
+  @Override public Map<String, Long> getExtractions() {
+    return extractions.byName();
+  }
+
+  @Override public long getExtractionMisses() {
+    return extractionMisses.get();
+  }
+
+  @Override public long getBinaryParseFailures() {
+    return binaryParseFailures.get();
+  }
+
+  @Override public long getExtractionCacheHits() {
+    return extractionCacheHits.get();
+  }
+
+  @Override public long getExtractionCacheMisses() {
+    return extractionCacheMisses.get();
+  }
+
+  @Override public long getExtractionCacheEvictions() {
+    return extractionCacheEvictions.get();
+  }
+
+  /** Returns the count of injections in the given format. */
+  public long injections(Format<?> format) {
+    return injections.count(format);
+  }
+
+  /** Returns the count of extractions from the given format. */
+  public long extractions(Format<?> format) {
+    return extractions.count(format);
+  }
+
+  @Override public String toString() {
+    return "BraveTracerMetrics{spansStarted=" + getSpansStarted()
+        + ", spansFinished=" + getSpansFinished()
+        + ", spansDowngraded=" + getSpansDowngraded()
+        + ", spansAbandoned=" + getSpansAbandoned()
+        + ", activateSpanCalls=" + getActivateSpanCalls()
+        + ", activeSpanCalls=" + getActiveSpanCalls()
+        + ", injections=" + getInjections()
+        + ", extractions=" + getExtractions()
+        + ", extractionMisses=" + getExtractionMisses()
+        + ", binaryParseFailures=" + getBinaryParseFailures()
+        + ", extractionCacheHits=" + getExtractionCacheHits()
+        + ", extractionCacheMisses=" + getExtractionCacheMisses()
+        + ", extractionCacheEvictions=" + getExtractionCacheEvictions()
+        + "}";
+  }
+
+  /**
+   * Counts per format. Builtin formats have dedicated counters chosen by identity, so that the
+   * common case doesn't hash the format. Only custom formats are looked up in a map.
+   */
+  static final class FormatCounters {
+    final Counter httpHeaders = new Counter(), textMap = new Counter(),
+        textMapInject = new Counter(), textMapExtract = new Counter(), binary = new Counter(),
+        binaryInject = new Counter(), binaryExtract = new Counter();
+    final ConcurrentMap<Format<?>, Counter> custom = new ConcurrentHashMap<>();
+
+    Counter get(Format<?> format) {
+      Counter counter = builtin(format);
+      if (counter != null) return counter;
+      counter = custom.get(format);
+      if (counter != null) return counter;
+      counter = new Counter();
+      Counter existing = custom.putIfAbsent(format, counter);
+      return existing != null ? existing : counter;
+    }
+
+    void increment(Format<?> format) {
+      get(format).increment();
+    }
+
+    long count(Format<?> format) {
+      Counter counter = builtin(format);
+      if (counter == null) counter = custom.get(format);
+      return counter != null ? counter.get() : 0L;
+    }
+
+    @Nullable Counter builtin(Format<?> format) {
+      if (format == HTTP_HEADERS) return httpHeaders;
+      if (format == TEXT_MAP) return textMap;
+      if (format == TEXT_MAP_INJECT) return textMapInject;
+      if (format == TEXT_MAP_EXTRACT) return textMapExtract;
+      if (format == BINARY) return binary;
+      if (format == BINARY_INJECT) return binaryInject;
+      if (format == BINARY_EXTRACT) return binaryExtract;
+      return null;
+    }
+
+    /** Builtin formats are omitted until used, as custom formats are. */
+    Map<String, Long> byName() {
+      Map<String, Long> result = new LinkedHashMap<>();
+      add(result, HTTP_HEADERS, httpHeaders);
+      add(result, TEXT_MAP, textMap);
+      add(result, TEXT_MAP_INJECT, textMapInject);
+      add(result, TEXT_MAP_EXTRACT, textMapExtract);
+      add(result, BINARY, binary);
+      add(result, BINARY_INJECT, binaryInject);
+      add(result, BINARY_EXTRACT, binaryExtract);
+      for (Map.Entry<Format<?>, Counter> entry : custom.entrySet()) {
+        add(result, entry.getKey(), entry.getValue());
+      }
+      return result;
+    }
+
+    static void add(Map<String, Long> result, Format<?> format, Counter counter) {
+      long count = counter.get();
+      if (count == 0L) return;
+      String name = format.toString();
+      Long previous = result.get(name); // two formats could share a name
+      result.put(name, previous != null ? previous + count : count);
+    }
+  }
+
+  /**
+   * A count split into cells chosen by thread ID, similar to {@code LongAdder}, which isn't
+   * available in Java 6. Cells are a cache line apart, so that threads updating different cells
+   * don't contend.
+   */
+  static final class Counter {
+    static final int CELLS = cells(Runtime.getRuntime().availableProcessors());
+    static final int STRIDE = 8; // longs per 64-byte cache line
+
+    final AtomicLongArray cells = new AtomicLongArray(CELLS * STRIDE);
+
+    void increment() {
+      int cell = (int) Thread.currentThread().getId() & (CELLS - 1);
+      cells.getAndIncrement(cell * STRIDE);
+    }
+
+    long get() {
+      long result = 0L;
+      for (int i = 0; i < CELLS; i++) result += cells.get(i * STRIDE);
+      return result;
+    }
+
+    /** Returns a power of two number of cells, at least the count of processors up to 16. */
+    static int cells(int processors) {
+      int result = 1;
+      while (result < processors && result < 16) result <<= 1;
+      return result;
+    }
+  }
+}
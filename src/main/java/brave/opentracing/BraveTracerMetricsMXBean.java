@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.opentracing;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link BraveTracerMetrics}. Counts only increase, and are read without stopping
+ * writers, so related counts may be slightly out of step with each other.
+ */
+public interface BraveTracerMetricsMXBean {
+  /** Count of spans started with a span builder. */
+  long getSpansStarted();
+
+  /** Count of recorded spans finished, which are the ones reported. */
+  long getSpansFinished();
+
+  /**
+   * Count of spans started unsampled because the {@code sampling.priority} tag was zero before
+   * start. This excludes spans with a parent, as the parent's sampling decision applies instead.
+   */
+  long getSpansDowngraded();
+
+  /**
+   * Count of recorded spans discarded without being reported, because the {@code
+   * sampling.priority} tag was set to zero after start.
+   */
+  long getSpansAbandoned();
+
+  /** Count of calls to {@link BraveTracer#activateSpan(io.opentracing.Span)}. */
+  long getActivateSpanCalls();
+
+  /** Count of calls to {@link BraveTracer#activeSpan()}. */
+  long getActiveSpanCalls();
+
+  /** Count of injections by {@linkplain io.opentracing.propagation.Format format} name. */
+  Map<String, Long> getInjections();
+
+  /** Count of extractions by {@linkplain io.opentracing.propagation.Format format} name. */
+  Map<String, Long> getExtractions();
+
+  /** Count of extractions which found no trace context, so returned null. */
+  long getExtractionMisses();
+
+  /** Count of binary extractions which failed, such as due to truncated input. */
+  long getBinaryParseFailures();
+
+  /**
+   * Count of extractions answered by the cache.
+   *
+   * @see BraveTracer.Builder#extractionCacheSize(int)
+   */
+  long getExtractionCacheHits();
+
+  /** Count of extractions that found propagation headers, but not in the cache. */
+  long getExtractionCacheMisses();
+
+  /** Count of cached extraction results dropped, as the cache was full. */
+  long getExtractionCacheEvictions();
+}
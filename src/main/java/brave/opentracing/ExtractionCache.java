@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.opentracing;
+
+import brave.internal.Nullable;
+import brave.propagation.TraceContext;
+import brave.propagation.TraceContextOrSamplingFlags;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Maps the propagation header values of a carrier to what was extracted from them, so that
+ * byte-identical headers, such as in a batch of messages or a retried request, aren't parsed
+ * again.
+ *
+ * <p>Entries are split across stripes by hash, each a least-recently-used map guarded by its own
+ * lock, so that concurrent extractions rarely contend. Small caches have fewer stripes, so that
+ * eviction order stays close to least-recently-used overall.
+ *
+ * @see BraveTracer.Builder#extractionCacheSize(int)
+ */
+final class ExtractionCache {
+  static final int MAX_STRIPES = 16, MIN_STRIPE_SIZE = 16;
+
+  final Stripe[] stripes;
+  final int mask;
+  final BraveTracerMetrics metrics;
+
+  ExtractionCache(int maxEntries, BraveTracerMetrics metrics) {
+    int stripeCount = 1;
+    while (stripeCount < MAX_STRIPES && stripeCount * 2 * MIN_STRIPE_SIZE <= maxEntries) {
+      stripeCount <<= 1;
+    }
+    int stripeSize = (maxEntries + stripeCount - 1) / stripeCount;
+    this.stripes = new Stripe[stripeCount];
+    for (int i = 0; i < stripeCount; i++) stripes[i] = new Stripe(stripeSize, metrics);
+    this.mask = stripeCount - 1;
+    this.metrics = metrics;
+  }
+
+  /** Returns a previous result for the same values, or null if there is none. */
+  @Nullable TraceContextOrSamplingFlags get(String[] values) {
+    Values key = new Values(values);
+    TraceContextOrSamplingFlags result = stripe(key).get(key);
+    if (result != null) {
+      metrics.extractionCacheHits.increment();
+    } else {
+      metrics.extractionCacheMisses.increment();
+    }
+    return result;
+  }
+
+  /**
+   * Caches the result if it has a trace context without extra state, such as baggage. Extra state
+   * can be updated after extraction, so sharing it would leak changes from one carrier into
+   * another. Other results aren't cached, so that malformed header values can't fill the cache.
+   */
+  void put(String[] values, TraceContextOrSamplingFlags result) {
+    TraceContext context = result.context();
+    if (context == null || !context.extra().isEmpty() || !result.extra().isEmpty()) return;
+    Values key = new Values(values.clone()); // values are scratch space of the caller
+    stripe(key).put(key, result);
+  }
+
+  Stripe stripe(Values key) {
+    return stripes[(key.hashCode >>> 16) & mask];
+  }
+
+  /** A least-recently-used map, where all access is synchronized on itself. */
+  static final class Stripe extends LinkedHashMap<Values, TraceContextOrSamplingFlags> {
+    final int maxEntries;
+    final BraveTracerMetrics metrics;
+
+    Stripe(int maxEntries, BraveTracerMetrics metrics) {
+      super(16, 0.75f, true);
+      this.maxEntries = maxEntries;
+      this.metrics = metrics;
+    }
+
+    @Override public synchronized TraceContextOrSamplingFlags get(Object key) {
+      return super.get(key);
+    }
+
+    @Override public synchronized TraceContextOrSamplingFlags put(Values key,
+        TraceContextOrSamplingFlags value) {
+      return super.put(key, value);
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Values, TraceContextOrSamplingFlags> eldest) {
+      if (size() <= maxEntries) return false;
+      metrics.extractionCacheEvictions.increment();
+      return true;
+    }
+  }
+
+  /** Propagation header values, indexed as {@link TextMapPropagation.PropagationKeys}. */
+  static final class Values {
+    final String[] values;
+    final int hashCode;
+
+    Values(String[] values) {
+      this.values = values;
+      int h = Arrays.hashCode(values);
+      this.hashCode = h ^ (h >>> 16);
+    }
+
+    @Override public boolean equals(Object o) {
+      return o instanceof Values && Arrays.equals(values, ((Values) o).values);
+    }
+
+    @Override public int hashCode() {
+      return hashCode;
+    }
+  }
+}
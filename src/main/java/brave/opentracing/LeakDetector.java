@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.opentracing;
+
+import brave.internal.Nullable;
+import brave.propagation.TraceContext;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logs spans that are garbage collected before they are finished, and scopes collected before they
+ * are closed, along with where they were created.
+ *
+ * <p>Only a fraction of instances are tracked, chosen by the low bits of the span ID, so there is
+ * no shared state on the hot path. Tracked instances are held with weak references, and those
+ * collected are polled when the next instance is tracked, so there is no background thread.
+ *
+ * @see BraveTracer.Builder#leakDetectionRate(float)
+ */
+final class LeakDetector {
+  static final Logger LOG = Logger.getLogger(LeakDetector.class.getName());
+  static final int SAMPLE_BITS = 0xffff;
+
+  static final LeakDetector NOOP = new LeakDetector(0.0f);
+
+  static LeakDetector create(float rate) {
+    return rate == 0.0f ? NOOP : new LeakDetector(rate);
+  }
+
+  /** Instances are tracked when the low bits of their span ID are less than this. */
+  final int threshold;
+  final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+  /** Keeps references reachable until their referent is closed or collected. */
+  final Set<Tracked> tracked =
+      Collections.newSetFromMap(new ConcurrentHashMap<Tracked, Boolean>());
+
+  LeakDetector(float rate) {
+    this.threshold = (int) (rate * (SAMPLE_BITS + 1));
+  }
+
+  @Nullable Tracked trackSpan(BraveSpan span, @Nullable String operationName) {
+    TraceContext context = span.delegate.context();
+    if (!isSampled(context)) return null;
+    return track(span, "Span " + operationName + " (" + context + ") was not finished");
+  }
+
+  @Nullable Tracked trackScope(BraveScope scope, BraveSpan span) {
+    TraceContext context = span.delegate.context();
+    if (!isSampled(context)) return null;
+    return track(scope, "Scope of span " + context + " was not closed");
+  }
+
+  boolean isSampled(TraceContext context) {
+    return (context.spanId() & SAMPLE_BITS) < threshold;
+  }
+
+  Tracked track(Object referent, String message) {
+    reportLeaks();
+    Tracked result = new Tracked(this, referent, message);
+    tracked.add(result);
+    return result;
+  }
+
+  /** Logs any tracked instances collected without being closed. */
+  void reportLeaks() {
+    for (Reference<?> reference; (reference = queue.poll()) != null; ) {
+      Tracked leak = (Tracked) reference;
+      if (!tracked.remove(leak)) continue; // raced with close
+      LOG.log(Level.WARNING, leak.message, leak.site);
+    }
+  }
+
+  static void close(@Nullable Tracked tracked) {
+    if (tracked != null) tracked.close();
+  }
+
+  static final class Tracked extends WeakReference<Object> {
+    final LeakDetector detector;
+    final String message;
+    final Throwable site;
+
+    Tracked(LeakDetector detector, Object referent, String message) {
+      super(referent, detector.queue);
+      this.detector = detector;
+      this.message = message;
+      this.site = new Throwable("created here");
+    }
+
+    void close() {
+      clear(); // prevents enqueueing
+      detector.tracked.remove(this);
+    }
+  }
+}
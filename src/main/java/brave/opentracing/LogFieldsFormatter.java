@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.opentracing;
+
+import brave.opentracing.BraveTracer.LogValueFormatter;
+import java.util.Map;
+
+/**
+ * Converts the fields of {@link io.opentracing.Span#log(Map)} to an annotation of the form
+ * "key1=value1 key2=value2", using any {@link LogValueFormatter} registered for a value's type.
+ */
+final class LogFieldsFormatter {
+  static final LogFieldsFormatter DEFAULT =
+      new LogFieldsFormatter(new Class<?>[0], new LogValueFormatter<?>[0]);
+
+  static LogFieldsFormatter create(Map<Class<?>, LogValueFormatter<?>> typeToFormatter) {
+    if (typeToFormatter.isEmpty()) return DEFAULT;
+    return new LogFieldsFormatter(
+        typeToFormatter.keySet().toArray(new Class<?>[0]),
+        typeToFormatter.values().toArray(new LogValueFormatter<?>[0]));
+  }
+
+  // Parallel arrays scanned in registration order, as there are usually very few formatters
+  final Class<?>[] types;
+  final LogValueFormatter<?>[] formatters;
+
+  LogFieldsFormatter(Class<?>[] types, LogValueFormatter<?>[] formatters) {
+    this.types = types;
+    this.formatters = formatters;
+  }
+
+  /** Returns the fields, which are copied into key, value pairs by {@link #copy(Map)}. */
+  String format(Object[] keyValues) {
+    // special-case the "event" field which is similar to the semantics of a zipkin annotation
+    Object event = keyValues.length == 2 && "event".equals(keyValues[0]) ? keyValues[1] : null;
+    if (event != null) {
+      if (event instanceof String) return (String) event;
+      return appendValue(new StringBuilder(), event).toString();
+    }
+
+    StringBuilder result = new StringBuilder();
+    for (int i = 0; i < keyValues.length; i += 2) {
+      if (i > 0) result.append(' ');
+      appendValue(result.append(keyValues[i]).append('='), keyValues[i + 1]);
+    }
+    return result.toString();
+  }
+
+  /**
+   * Copies the fields as key, value pairs, as the caller may change or reuse the map once {@link
+   * io.opentracing.Span#log(Map)} returns.
+   */
+  static Object[] copy(Map<String, ?> fields) {
+    Object[] result = new Object[fields.size() * 2];
+    int i = 0;
+    for (Map.Entry<String, ?> entry : fields.entrySet()) {
+      result[i++] = entry.getKey();
+      result[i++] = entry.getValue();
+    }
+    return result;
+  }
+
+  @SuppressWarnings("unchecked")
+  StringBuilder appendValue(StringBuilder result, Object value) {
+    if (value instanceof String) return result.append((String) value);
+    for (int i = 0; i < types.length; i++) {
+      if (types[i].isInstance(value)) {
+        ((LogValueFormatter<Object>) formatters[i]).formatTo(value, result);
+        return result;
+      }
+    }
+    return result.append(value);
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.opentracing;
+
+import brave.Span.Kind;
+import brave.Tracing;
+import java.util.Map;
+
+/**
+ * Returned instead of {@link BraveSpan} when the underlying span is {@linkplain
+ * brave.Span#isNoop() not recorded}. Mutators do nothing, except recording the span kind, which is
+ * needed to inject the context. {@link #context()} and baggage work as usual.
+ */
+final class NoopBraveSpan extends BraveSpan {
+  NoopBraveSpan(Tracing tracing, LogFieldsFormatter logFieldsFormatter,
+      BraveTracerMetrics metrics, brave.Span delegate) {
+    super(tracing, logFieldsFormatter, metrics, delegate);
+  }
+
+  @Override public BraveSpan setTag(String key, String value) {
+    if (specialTag(key) != TAG_SPAN_KIND) return this;
+    Kind kind = parseKind(value);
+    if (kind != null) context.kind = kind;
+    return this;
+  }
+
+  @Override public BraveSpan setTag(String key, boolean value) {
+    return this;
+  }
+
+  @Override public BraveSpan setTag(String key, Number value) {
+    return this;
+  }
+
+  @Override public BraveSpan log(Map<String, ?> fields) {
+    return this;
+  }
+
+  @Override public BraveSpan log(long timestampMicroseconds, Map<String, ?> fields) {
+    return this;
+  }
+
+  @Override public BraveSpan log(String event) {
+    return this;
+  }
+
+  @Override public BraveSpan log(long timestampMicroseconds, String event) {
+    return this;
+  }
+
+  @Override public BraveSpan setOperationName(String operationName) {
+    return this;
+  }
+
+  @Override public void finish() {
+    LeakDetector.close(leak); // nothing to report
+  }
+
+  @Override public void finish(long finishMicros) {
+    LeakDetector.close(leak); // nothing to report
+  }
+}
@@ -14,6 +14,7 @@
 package brave.opentracing;
 
 import brave.Tracing;
+import brave.opentracing.BraveTracer.OpenTracingApiVersion;
 import io.opentracing.ScopeManager;
 import io.opentracing.Span;
 
@@ -23,18 +24,27 @@ import io.opentracing.Span;
  * <p>Originally designed by OkHttp team, derived from {@code okhttp3.internal.platform.OpenTracingVersion}
  */
 abstract class OpenTracingVersion {
-  private static final OpenTracingVersion INSTANCE = findVersion();
+  /** Detection is reflective, so it is deferred until a tracer is built without a version. */
+  static final class Detected {
+    static final OpenTracingVersion INSTANCE = findVersion();
+  }
 
   static OpenTracingVersion get() {
-    return INSTANCE;
+    return Detected.INSTANCE;
+  }
+
+  static OpenTracingVersion of(OpenTracingApiVersion version) {
+    return version == OpenTracingApiVersion.V0_32 ? new v0_32() : new v0_33();
   }
 
-  BraveScopeManager scopeManager(Tracing tracing) {
-    return new BraveScopeManager(tracing);
+  BraveScopeManager scopeManager(Tracing tracing, LogFieldsFormatter logFieldsFormatter,
+      BraveTracerMetrics metrics, LeakDetector leakDetector) {
+    return new BraveScopeManager(tracing, logFieldsFormatter, metrics, leakDetector);
   }
 
   BraveSpanBuilder spanBuilder(BraveTracer braveTracer, String operationName) {
-    return new BraveSpanBuilder(braveTracer.tracing, operationName);
+    return new BraveSpanBuilder(braveTracer.tracing, braveTracer.logFieldsFormatter,
+        braveTracer.metrics, braveTracer.leakDetector, operationName);
   }
 
   /** Attempt to match the host runtime to a capable OpenTracingVersion implementation. */
@@ -82,8 +92,10 @@ abstract class OpenTracingVersion {
       return null;
     }
 
-    @Override BraveScopeManager scopeManager(Tracing tracing) {
-      return new v0_32_BraveScopeManager(tracing);
+    @Override BraveScopeManager scopeManager(Tracing tracing,
+        LogFieldsFormatter logFieldsFormatter, BraveTracerMetrics metrics,
+        LeakDetector leakDetector) {
+      return new v0_32_BraveScopeManager(tracing, logFieldsFormatter, metrics, leakDetector);
     }
 
     @Override BraveSpanBuilder spanBuilder(BraveTracer braveTracer, String operationName) {
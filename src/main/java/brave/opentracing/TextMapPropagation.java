@@ -14,16 +14,22 @@
 package brave.opentracing;
 
 import brave.Span.Kind;
+import brave.baggage.BaggagePropagation;
+import brave.internal.Nullable;
 import brave.propagation.Propagation;
 import brave.propagation.Propagation.Getter;
 import brave.propagation.Propagation.RemoteSetter;
 import brave.propagation.Propagation.Setter;
+import brave.propagation.TraceContext;
 import brave.propagation.TraceContext.Extractor;
+import brave.propagation.TraceContext.Injector;
 import brave.propagation.TraceContextOrSamplingFlags;
 import io.opentracing.propagation.TextMapExtract;
 import io.opentracing.propagation.TextMapInject;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
@@ -65,16 +71,71 @@ final class TextMapPropagation {
     }
   }
 
-  static final Getter<Map<String, String>, String> GETTER =
-      new Getter<Map<String, String>, String>() {
-        @Override public String get(Map<String, String> carrier, String key) {
-          return carrier.get(key.toLowerCase(Locale.ROOT));
-        }
+  /**
+   * Holds the injectors of a text format indexed by {@link Kind#ordinal()}, so that injection needs
+   * no lookup after the format is resolved.
+   */
+  static final class TextMapInjectors {
+    final Injector<TextMapInject> local;
+    final Injector<TextMapInject>[] remote;
+    /**
+     * True when injected values only depend on the trace context, so can be cached by {@link
+     * EncodedHeaders}. Remote baggage values can change after injection, so aren't cached.
+     */
+    final boolean cacheable;
 
-        @Override public String toString() {
-          return "Map::getLowerCase";
-        }
-      };
+    @SuppressWarnings("unchecked")
+    TextMapInjectors(Propagation<String> propagation) {
+      cacheable = BaggagePropagation.allKeyNames(propagation).size() == propagation.keys().size();
+      local = propagation.injector(SETTER);
+      remote = new Injector[Kind.values().length];
+      for (REMOTE_SETTER setter : REMOTE_SETTER.values()) {
+        remote[setter.spanKind().ordinal()] = propagation.injector(setter);
+      }
+      for (int i = 0; i < remote.length; i++) {
+        if (remote[i] == null) remote[i] = local; // Ex. SERVER
+      }
+    }
+
+    Injector<TextMapInject> get(@Nullable Kind kind) {
+      return kind != null ? remote[kind.ordinal()] : local;
+    }
+  }
+
+  /**
+   * The headers an injector wrote for a trace context, so that injecting the same context again
+   * only copies strings. For example, B3 single format is otherwise encoded on each injection.
+   */
+  static final class EncodedHeaders implements TextMapInject {
+    final Injector<TextMapInject> injector;
+    String[] keysAndValues = new String[8];
+    int length;
+
+    static EncodedHeaders encode(Injector<TextMapInject> injector, TraceContext context) {
+      EncodedHeaders result = new EncodedHeaders(injector);
+      injector.inject(context, result);
+      return result;
+    }
+
+    EncodedHeaders(Injector<TextMapInject> injector) {
+      this.injector = injector;
+    }
+
+    /** Only called while encoding, before this is shared. */
+    @Override public void put(String key, String value) {
+      if (length == keysAndValues.length) {
+        keysAndValues = Arrays.copyOf(keysAndValues, length * 2);
+      }
+      keysAndValues[length++] = key;
+      keysAndValues[length++] = value;
+    }
+
+    void writeTo(TextMapInject carrier) {
+      for (int i = 0; i < length; i += 2) {
+        carrier.put(keysAndValues[i], keysAndValues[i + 1]);
+      }
+    }
+  }
 
   /**
    * Even though TextMap is named like Map, it doesn't have a retrieve-by-key method.
@@ -82,28 +143,154 @@ final class TextMapPropagation {
    * <p>See https://github.com/opentracing/opentracing-java/issues/305
    */
   static final class TextMapExtractor implements Extractor<TextMapExtract> {
-    final Set<String> allNames;
-    final Extractor<Map<String, String>> delegate;
+    final PropagationKeys keys;
+    final String[] noValues;
+    final Extractor<String[]> delegate;
+    // When baggage or similar are in use, an empty result != TraceContextOrSamplingFlags.EMPTY
+    final TraceContextOrSamplingFlags emptyExtraction;
+    @Nullable final ExtractionCache cache;
 
-    TextMapExtractor(
-        Propagation<String> propagation,
-        Set<String> allNames,
-        Getter<Map<String, String>, String> getter) {
-      this.allNames = allNames;
-      this.delegate = propagation.extractor(getter);
+    TextMapExtractor(Propagation<String> propagation, PropagationKeys keys,
+        @Nullable ExtractionCache cache) {
+      this.keys = keys;
+      this.noValues = new String[keys.size()];
+      this.delegate = propagation.extractor(keys);
+      this.emptyExtraction = delegate.extract(noValues);
+      // Propagation that adds extra state, such as baggage, has results that can't be cached.
+      this.cache = emptyExtraction.extra().isEmpty() ? cache : null;
     }
 
-    /** Performs case-insensitive lookup */
     @Override public TraceContextOrSamplingFlags extract(TextMapExtract entries) {
-      Map<String, String> cache = new LinkedHashMap<>();
+      TraceContextOrSamplingFlags result = extractOrNull(entries);
+      return result != null ? result : emptyExtraction;
+    }
+
+    @Nullable TraceContextOrSamplingFlags extractOrNull(TextMapExtract entries) {
+      return extractOrNull(entries, null);
+    }
+
+    /**
+     * Performs case-insensitive lookup, stopping once all propagation keys are found. This returns
+     * null when no propagation keys were found, or the result is otherwise empty.
+     *
+     * <p>When a propagation key repeats, such as in different case, the first value wins. This is
+     * consistent with stopping early, which never sees later duplicates.
+     *
+     * @param scratch values array to reuse across carriers, cleared before returning, or null to
+     * allocate one when a propagation key is found.
+     */
+    @Nullable TraceContextOrSamplingFlags extractOrNull(TextMapExtract entries,
+        @Nullable String[] scratch) {
+      String[] values = null; // lazy as most carriers don't include all propagation keys
+      int remaining = keys.size();
       for (Iterator<Map.Entry<String, String>> it = entries.iterator(); it.hasNext(); ) {
         Map.Entry<String, String> next = it.next();
-        String inputKey = next.getKey().toLowerCase(Locale.ROOT);
-        if (allNames.contains(inputKey)) {
-          cache.put(inputKey, next.getValue());
+        String value = next.getValue();
+        if (value == null) continue;
+        int index = keys.indexOf(next.getKey());
+        if (index == -1) continue;
+        if (values == null) values = scratch != null ? scratch : new String[keys.size()];
+        if (values[index] != null) continue; // the first value wins
+        values[index] = value;
+        remaining--;
+        if (remaining == 0) break;
+      }
+      if (values == null) return null;
+
+      TraceContextOrSamplingFlags result = cache != null ? cache.get(values) : null;
+      if (result == null) {
+        result = delegate.extract(values);
+        // Only when there's no trace context could the values have been empty, ex. malformed.
+        if (result.context() == null && result.equals(emptyExtraction)) {
+          result = null;
+        } else if (cache != null) {
+          cache.put(values, result);
+        }
+      }
+      if (values == scratch) Arrays.fill(scratch, null); // the result doesn't reference values
+      return result;
+    }
+  }
+
+  /**
+   * Indexes lowercase propagation key names, so that carrier keys can be matched without
+   * allocating a lowercase copy of each. Matching ignores ASCII case, which is sufficient for
+   * header names.
+   *
+   * <p>This is also the {@link Getter} for values collected by {@link TextMapExtractor}, which are
+   * stored at the index of their key.
+   */
+  static final class PropagationKeys implements Getter<String[], String> {
+    static PropagationKeys create(Collection<String> keyNames) {
+      Set<String> lcKeyNames = new LinkedHashSet<>();
+      for (String keyName : keyNames) {
+        lcKeyNames.add(keyName.toLowerCase(Locale.ROOT));
+      }
+      return new PropagationKeys(lcKeyNames.toArray(new String[0]));
+    }
+
+    final String[] names;
+    /** Open-addressed hash table of index + 1 into {@link #names}. Zero means an empty slot. */
+    final int[] table;
+    final int mask;
+    /** Bit set of name lengths, which rejects most unrelated keys before hashing them. */
+    final long lengths;
+
+    PropagationKeys(String[] names) {
+      this.names = names;
+      int tableSize = 2;
+      while (tableSize < names.length * 2) tableSize <<= 1;
+      table = new int[tableSize];
+      mask = tableSize - 1;
+      long lengths = 0L;
+      for (int index = 0; index < names.length; index++) {
+        lengths |= lengthBit(names[index].length());
+        int i = lowerCaseHash(names[index]) & mask;
+        while (table[i] != 0) i = (i + 1) & mask;
+        table[i] = index + 1;
+      }
+      this.lengths = lengths;
+    }
+
+    int size() {
+      return names.length;
+    }
+
+    /** Returns the index of the name equal to the input, ignoring case, or -1 if there is none. */
+    int indexOf(String key) {
+      int length = key.length();
+      if ((lengths & lengthBit(length)) == 0L) return -1;
+      for (int i = lowerCaseHash(key) & mask, index; (index = table[i]) != 0; i = (i + 1) & mask) {
+        String name = names[index - 1];
+        if (name.length() == length && name.regionMatches(true, 0, key, 0, length)) {
+          return index - 1;
         }
       }
-      return delegate.extract(cache);
+      return -1;
+    }
+
+    @Override public String get(String[] values, String key) {
+      int index = indexOf(key);
+      return index != -1 ? values[index] : null;
+    }
+
+    @Override public String toString() {
+      return "PropagationKeys::getIgnoreCase";
+    }
+
+    static long lengthBit(int length) {
+      return 1L << Math.min(length, 63);
+    }
+
+    /** Same as {@code toLowerCase(Locale.ROOT).hashCode()} for ASCII, but doesn't allocate. */
+    static int lowerCaseHash(String key) {
+      int h = 0;
+      for (int i = 0, length = key.length(); i < length; i++) {
+        char c = key.charAt(i);
+        if (c >= 'A' && c <= 'Z') c = (char) (c + ('a' - 'A'));
+        h = 31 * h + c;
+      }
+      return h ^ (h >>> 16);
     }
   }
 }
@@ -13,37 +13,31 @@
  */
 package brave.opentracing;
 
-import brave.Tracer.SpanInScope;
+import brave.propagation.CurrentTraceContext;
 
 final class v0_32_BraveScope extends BraveScope {
-  final v0_32_BraveScopeManager source;
-  final BraveSpan wrapped;
   final boolean finishSpanOnClose;
 
   /**
-   * @param delegate a SpanInScope to be closed upon deactivation of this ActiveSpan
-   * @param source the BraveActiveSpanSource that created this BraveActiveSpan
+   * @param delegate a Scope to be closed upon deactivation of this ActiveSpan
    * @param wrapped the wrapped BraveSpan to which we will delegate all span operations
    */
-  v0_32_BraveScope(SpanInScope delegate, v0_32_BraveScopeManager source, BraveSpan wrapped,
+  v0_32_BraveScope(CurrentTraceContext.Scope delegate, BraveSpan wrapped,
       boolean finishSpanOnClose) {
-    super(delegate);
-    this.source = source;
-    this.wrapped = wrapped;
+    super(delegate, wrapped);
     this.finishSpanOnClose = finishSpanOnClose;
   }
 
   @Override public void close() {
     super.close();
-    if (finishSpanOnClose) wrapped.finish();
-    source.deregister(this);
+    if (finishSpanOnClose) span.finish();
   }
 
   @Override @Deprecated public BraveSpan span() {
-    return wrapped;
+    return span;
   }
 
   @Override public String toString() {
-    return "BraveScope{scope=" + delegate + ", wrapped=" + wrapped.delegate + '}';
+    return "BraveScope{scope=" + delegate + ", wrapped=" + span.delegate + '}';
   }
 }
@@ -17,26 +17,18 @@ import brave.Tracing;
 import brave.propagation.CurrentTraceContext;
 import io.opentracing.Scope;
 import io.opentracing.Span;
-import java.util.ArrayDeque;
-import java.util.Deque;
 
-/** This integrates with Brave's {@link CurrentTraceContext}. */
+/**
+ * This integrates with Brave's {@link CurrentTraceContext}.
+ *
+ * <p>There is no stack of scopes here: the span is stashed in the context placed in scope, so
+ * pushing, popping and looking up the active span are constant time, and nothing is left behind in
+ * a thread local when scopes are leaked.
+ */
 final class v0_32_BraveScopeManager extends BraveScopeManager {
-  // This probably needs to be redesigned to stash the OpenTracing span in brave's .extra()
-  // We wouldn't have to do this if it weren't a requirement to return the same instance...
-  //
-  // When scopes are leaked this thread local will prevent this type from being unloaded. This can
-  // cause problems in redeployment scenarios. https://github.com/openzipkin/brave/issues/785
-  @SuppressWarnings("ThreadLocalUsage")
-  final ThreadLocal<Deque<v0_32_BraveScope>> currentScopes =
-      new ThreadLocal<Deque<v0_32_BraveScope>>() {
-        @Override protected Deque<v0_32_BraveScope> initialValue() {
-          return new ArrayDeque<>();
-        }
-      };
-
-  v0_32_BraveScopeManager(Tracing tracing) {
-    super(tracing);
+  v0_32_BraveScopeManager(Tracing tracing, LogFieldsFormatter logFieldsFormatter,
+      BraveTracerMetrics metrics, LeakDetector leakDetector) {
+    super(tracing, logFieldsFormatter, metrics, leakDetector);
   }
 
   @Override @Deprecated public Scope active() {
@@ -55,16 +47,7 @@ final class v0_32_BraveScopeManager extends BraveScopeManager {
   }
 
   @Override @Deprecated BraveSpan currentSpan() {
-    BraveScope scope = currentScopes.get().peekFirst();
-    if (scope != null) {
-      return scope.span();
-    } else {
-      brave.Span braveSpan = tracer.currentSpan();
-      if (braveSpan != null) {
-        return new BraveSpan(tracer, braveSpan);
-      }
-    }
-    return null;
+    return activeSpan();
   }
 
   @Override public BraveScope activate(Span span) {
@@ -72,6 +55,7 @@ final class v0_32_BraveScopeManager extends BraveScopeManager {
   }
 
   @Override @Deprecated public BraveScope activate(Span span, boolean finishSpanOnClose) {
+    metrics.activateSpanCalls.increment();
     if (span == null) return null;
     if (!(span instanceof BraveSpan)) {
       throw new IllegalArgumentException(
@@ -81,14 +65,10 @@ final class v0_32_BraveScopeManager extends BraveScopeManager {
   }
 
   BraveScope newScope(BraveSpan span, boolean finishSpanOnClose) {
-    v0_32_BraveScope result = new v0_32_BraveScope(
-        tracer.withSpanInScope(span.delegate), this, span, finishSpanOnClose
+    BraveScope result = new v0_32_BraveScope(
+        currentTraceContext.newScope(span.scopedContext()), span, finishSpanOnClose
     );
-    currentScopes.get().addFirst(result);
+    result.leak = leakDetector.trackScope(result, span);
     return result;
   }
-
-  void deregister(BraveScope span) {
-    currentScopes.get().remove(span);
-  }
 }
@@ -17,7 +17,8 @@ final class v0_32_BraveSpanBuilder extends BraveSpanBuilder {
   final BraveScopeManager scopeManager;
 
   v0_32_BraveSpanBuilder(BraveScopeManager scopeManager, String operationName) {
-    super(scopeManager.tracing, operationName);
+    super(scopeManager.tracing, scopeManager.logFieldsFormatter, scopeManager.metrics,
+        scopeManager.leakDetector, operationName);
     this.scopeManager = scopeManager;
   }
 
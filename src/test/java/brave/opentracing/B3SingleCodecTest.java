@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.opentracing;
+
+import brave.opentracing.BinaryPropagation.B3SingleCodec;
+import brave.propagation.B3SingleFormat;
+import brave.propagation.SamplingFlags;
+import brave.propagation.TraceContext;
+import brave.propagation.TraceContextOrSamplingFlags;
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static io.opentracing.propagation.BinaryAdapters.extractionCarrier;
+import static io.opentracing.propagation.BinaryAdapters.injectionCarrier;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(DataProviderRunner.class)
+public class B3SingleCodecTest {
+  static final TraceContext BASE = TraceContext.newBuilder().traceId(1L).spanId(2L).build();
+
+  @DataProvider public static Object[] contexts() {
+    return new Object[] {
+        BASE,
+        BASE.toBuilder().sampled(true).build(),
+        BASE.toBuilder().sampled(false).build(),
+        BASE.toBuilder().debug(true).build(),
+        BASE.toBuilder().parentId(3L).build(),
+        BASE.toBuilder().parentId(3L).sampled(true).build(),
+        BASE.toBuilder().traceIdHigh(0xcafebabeL).traceId(-1L).spanId(Long.MIN_VALUE).build(),
+    };
+  }
+
+  @Test @UseDataProvider("contexts")
+  public void inject_sameAsB3SingleFormat(TraceContext context) {
+    ByteBuffer buffer = ByteBuffer.allocate(128);
+    B3SingleCodec.INSTANCE.inject(context, injectionCarrier(buffer));
+
+    buffer.flip();
+    byte[] injected = new byte[buffer.remaining()];
+    buffer.get(injected);
+    assertThat(injected).isEqualTo(B3SingleFormat.writeB3SingleFormatAsBytes(context));
+  }
+
+  @Test @UseDataProvider("contexts")
+  public void extract_heapBuffer(TraceContext context) {
+    ByteBuffer buffer = ByteBuffer.wrap(B3SingleFormat.writeB3SingleFormatAsBytes(context));
+
+    assertThat(B3SingleCodec.INSTANCE.extract(extractionCarrier(buffer)))
+        .isEqualTo(B3SingleFormat.parseB3SingleFormat(B3SingleFormat.writeB3SingleFormat(context)));
+    assertThat(buffer.hasRemaining()).isFalse();
+  }
+
+  @Test @UseDataProvider("contexts")
+  public void extract_directBuffer(TraceContext context) {
+    byte[] b3 = B3SingleFormat.writeB3SingleFormatAsBytes(context);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(b3.length + 2);
+    buffer.put((byte) ' ').put(b3).put((byte) ' ');
+    buffer.position(1).limit(b3.length + 1);
+
+    assertThat(B3SingleCodec.INSTANCE.extract(extractionCarrier(buffer)))
+        .isEqualTo(B3SingleFormat.parseB3SingleFormat(B3SingleFormat.writeB3SingleFormat(context)));
+  }
+
+  @Test public void extract_samplingFlagsOnly() {
+    ByteBuffer buffer = ByteBuffer.wrap("0".getBytes(US_ASCII));
+
+    assertThat(B3SingleCodec.INSTANCE.extract(extractionCarrier(buffer)))
+        .isEqualTo(TraceContextOrSamplingFlags.create(SamplingFlags.NOT_SAMPLED));
+  }
+
+  @Test public void extract_malformed() {
+    ByteBuffer buffer = ByteBuffer.wrap("0000000000000001-".getBytes(US_ASCII));
+
+    assertThat(B3SingleCodec.INSTANCE.extract(extractionCarrier(buffer)))
+        .isSameAs(TraceContextOrSamplingFlags.EMPTY);
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2016-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.opentracing;
+
+import brave.Tracing;
+import brave.handler.MutableSpan;
+import brave.propagation.StrictCurrentTraceContext;
+import brave.propagation.TraceContext;
+import brave.test.TestSpanHandler;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BraveExecutorsTest {
+  TestSpanHandler spans = new TestSpanHandler();
+  StrictCurrentTraceContext currentTraceContext = StrictCurrentTraceContext.create();
+  Tracing brave = Tracing.newBuilder()
+      .currentTraceContext(currentTraceContext)
+      .addSpanHandler(spans)
+      .build();
+  BraveTracer tracer = BraveTracer.create(brave);
+  ExecutorService executorService = Executors.newSingleThreadExecutor();
+  ScheduledExecutorService scheduledExecutorService = Executors.newScheduledThreadPool(1);
+
+  @After public void close() {
+    executorService.shutdownNow();
+    scheduledExecutorService.shutdownNow();
+    brave.close();
+    currentTraceContext.close();
+  }
+
+  @Test public void wrap_executor() throws Exception {
+    Executor executor = tracer.wrap((Executor) executorService);
+    AtomicReference<TraceContext> inTask = new AtomicReference<>();
+    CountDownLatch latch = new CountDownLatch(1);
+
+    BraveSpan span = tracer.buildSpan("parent").start();
+    try (BraveScope scope = tracer.activateSpan(span)) {
+      executor.execute(() -> {
+        inTask.set(brave.currentTraceContext().get());
+        latch.countDown();
+      });
+    } finally {
+      span.finish();
+    }
+
+    assertThat(latch.await(1, TimeUnit.SECONDS)).isTrue();
+    assertThat(inTask.get()).isEqualTo(span.context().unwrap());
+  }
+
+  @Test public void wrap_executorService_submitAndInvokeAll() throws Exception {
+    ExecutorService executor = tracer.wrap(executorService);
+    Callable<TraceContext> current = () -> brave.currentTraceContext().get();
+
+    BraveSpan span = tracer.buildSpan("parent").start();
+    Future<TraceContext> submitted;
+    List<Future<TraceContext>> invoked;
+    try (BraveScope scope = tracer.activateSpan(span)) {
+      submitted = executor.submit(current);
+      invoked = executor.invokeAll(Arrays.asList(current, current));
+    } finally {
+      span.finish();
+    }
+
+    assertThat(submitted.get()).isEqualTo(span.context().unwrap());
+    for (Future<TraceContext> future : invoked) {
+      assertThat(future.get()).isEqualTo(span.context().unwrap());
+    }
+  }
+
+  @Test public void wrap_executorService_noCurrentContext() throws Exception {
+    ExecutorService executor = tracer.wrap(executorService);
+
+    assertThat(executor.submit(() -> brave.currentTraceContext().get()).get()).isNull();
+  }
+
+  @Test public void wrap_scheduledExecutorService() throws Exception {
+    ScheduledExecutorService executor = tracer.wrap(scheduledExecutorService);
+
+    BraveSpan span = tracer.buildSpan("parent").start();
+    Future<TraceContext> scheduled;
+    try (BraveScope scope = tracer.activateSpan(span)) {
+      scheduled =
+          executor.schedule(() -> brave.currentTraceContext().get(), 1, TimeUnit.MILLISECONDS);
+    } finally {
+      span.finish();
+    }
+
+    assertThat(scheduled.get()).isEqualTo(span.context().unwrap());
+  }
+
+  @Test public void annotateExecutorQueueWait() throws Exception {
+    tracer = BraveTracer.newBuilder(brave).annotateExecutorQueueWait(true).build();
+    ExecutorService executor = tracer.wrap(executorService);
+
+    BraveSpan span = tracer.buildSpan("parent").start();
+    try (BraveScope scope = tracer.activateSpan(span)) {
+      executor.submit(() -> {}).get();
+    } finally {
+      span.finish();
+    }
+
+    MutableSpan reported = spans.get(0);
+    assertThat(reported.annotations()).extracting(a -> a.getValue())
+        .containsExactly(BraveExecutors.QUEUED, BraveExecutors.STARTED);
+  }
+
+  @Test public void annotateExecutorQueueWait_notAfterFinish() throws Exception {
+    tracer = BraveTracer.newBuilder(brave).annotateExecutorQueueWait(true).build();
+    ExecutorService executor = tracer.wrap(executorService);
+    CountDownLatch started = new CountDownLatch(1), finished = new CountDownLatch(1);
+
+    BraveSpan span = tracer.buildSpan("parent").start();
+    Future<?> future;
+    try (BraveScope scope = tracer.activateSpan(span)) {
+      executor.submit(() -> {
+        started.countDown();
+        finished.await();
+        return null;
+      });
+      // queue a second task behind the first, which starts after the span finishes
+      future = executor.submit(() -> {});
+      started.await();
+    } finally {
+      span.finish();
+      finished.countDown();
+    }
+    future.get();
+
+    assertThat(spans.get(0).annotations()).extracting(a -> a.getValue())
+        .containsExactly(BraveExecutors.QUEUED, BraveExecutors.STARTED);
+  }
+
+  @Test public void annotateExecutorQueueWait_disabledByDefault() throws Exception {
+    ExecutorService executor = tracer.wrap(executorService);
+
+    BraveSpan span = tracer.buildSpan("parent").start();
+    try (BraveScope scope = tracer.activateSpan(span)) {
+      executor.submit(() -> {}).get();
+    } finally {
+      span.finish();
+    }
+
+    assertThat(spans.get(0).annotations()).isEmpty();
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.opentracing;
+
+import brave.Tracing;
+import brave.handler.MutableSpan;
+import brave.handler.SpanHandler;
+import brave.propagation.TraceContext;
+import java.util.Collections;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Test;
+
+import static io.opentracing.tag.Tags.SAMPLING_PRIORITY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+/**
+ * Races operations on the same span from two threads, many times, and checks the outcome is one
+ * that is allowed. This is in the spirit of jcstress, without its harness.
+ */
+public class BraveSpanRaceTest {
+  static final int ITERATIONS = 2000;
+
+  AtomicInteger reported = new AtomicInteger();
+  AtomicReference<MutableSpan> lastReported = new AtomicReference<>();
+  Tracing brave = Tracing.newBuilder().addSpanHandler(new SpanHandler() {
+    @Override public boolean end(TraceContext context, MutableSpan span, Cause cause) {
+      if (cause == Cause.FINISHED) {
+        reported.incrementAndGet();
+        lastReported.set(span);
+      }
+      return true;
+    }
+  }).build();
+  BraveTracer tracer = BraveTracer.create(brave);
+  ExecutorService executor = Executors.newFixedThreadPool(2);
+  CyclicBarrier barrier = new CyclicBarrier(2);
+
+  @After public void close() {
+    executor.shutdownNow();
+    brave.close();
+  }
+
+  @Test public void finish_finish_reportsOnce() throws Exception {
+    for (int i = 0; i < ITERATIONS; i++) {
+      reported.set(0);
+      BraveSpan span = tracer.buildSpan("race").start();
+      span.setTag("count", i);
+
+      race(() -> span.finish(), () -> span.finish(2L));
+
+      assertThat(reported).hasValue(1);
+    }
+  }
+
+  /** Either finish wins and the span is reported, or it is abandoned and not reported. */
+  @Test public void finish_samplingPriorityZero_reportsOnlyIfStillSampled() throws Exception {
+    for (int i = 0; i < ITERATIONS; i++) {
+      reported.set(0);
+      BraveSpan span = tracer.buildSpan("race").start();
+
+      race(() -> span.finish(), () -> span.setTag(SAMPLING_PRIORITY.getKey(), 0));
+
+      boolean sampled = span.context().unwrap().sampled();
+      assertThat(reported).hasValue(sampled ? 1 : 0);
+      assertThat(span.unwrap().isNoop()).isEqualTo(!sampled);
+    }
+  }
+
+  /** Tags set before the race are kept, and the raced tag is either added or not. */
+  @Test public void finish_setNumberTag_keepsEarlierTags() throws Exception {
+    for (int i = 0; i < ITERATIONS; i++) {
+      reported.set(0);
+      BraveSpan span = tracer.buildSpan("race").start();
+      for (int j = 0; j < 4; j++) span.setTag("tag" + j, j);
+
+      race(() -> span.finish(), () -> {
+        for (int j = 4; j < 8; j++) span.setTag("tag" + j, j);
+      });
+
+      assertThat(reported).hasValue(1);
+      assertThat(lastReported.get().tags())
+          .containsEntry("tag0", "0")
+          .containsEntry("tag1", "1")
+          .containsEntry("tag2", "2")
+          .containsEntry("tag3", "3");
+    }
+  }
+
+  /** Fields logged before the race are kept, and the raced fields are either added or not. */
+  @Test public void finish_logFields_keepsEarlierLogs() throws Exception {
+    for (int i = 0; i < ITERATIONS; i++) {
+      reported.set(0);
+      BraveSpan span = tracer.buildSpan("race").start();
+      for (int j = 0; j < 4; j++) span.log(j + 1L, Collections.singletonMap("event", "log" + j));
+
+      race(() -> span.finish(), () -> {
+        for (int j = 4; j < 8; j++) span.log(j + 1L, Collections.singletonMap("event", "log" + j));
+      });
+
+      assertThat(reported).hasValue(1);
+      assertThat(lastReported.get().annotations())
+          .contains(entry(1L, "log0"), entry(2L, "log1"), entry(3L, "log2"), entry(4L, "log3"));
+    }
+  }
+
+  void race(Runnable one, Runnable two) throws Exception {
+    Future<?> first = executor.submit(() -> awaitThen(one));
+    Future<?> second = executor.submit(() -> awaitThen(two));
+    first.get();
+    second.get();
+  }
+
+  void awaitThen(Runnable runnable) {
+    try {
+      barrier.await();
+    } catch (Exception e) {
+      throw new AssertionError(e);
+    }
+    runnable.run();
+  }
+}
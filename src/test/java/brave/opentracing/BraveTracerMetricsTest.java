@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.opentracing;
+
+import brave.Tracing;
+import brave.opentracing.BraveTracerMetrics.Counter;
+import brave.propagation.StrictCurrentTraceContext;
+import brave.test.TestSpanHandler;
+import io.opentracing.propagation.BinaryAdapters;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMapAdapter;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.After;
+import org.junit.Test;
+
+import static io.opentracing.propagation.Format.Builtin.BINARY_EXTRACT;
+import static io.opentracing.propagation.Format.Builtin.BINARY_INJECT;
+import static io.opentracing.propagation.Format.Builtin.HTTP_HEADERS;
+import static io.opentracing.tag.Tags.SAMPLING_PRIORITY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class BraveTracerMetricsTest {
+  StrictCurrentTraceContext currentTraceContext = StrictCurrentTraceContext.create();
+  TestSpanHandler spans = new TestSpanHandler();
+  Tracing brave = Tracing.newBuilder()
+      .currentTraceContext(currentTraceContext)
+      .addSpanHandler(spans)
+      .build();
+  BraveTracer tracer = BraveTracer.create(brave);
+  BraveTracerMetrics metrics = tracer.metrics();
+
+  @After public void close() {
+    brave.close();
+    currentTraceContext.close();
+  }
+
+  @Test public void spans() {
+    tracer.buildSpan("sampled").start().finish();
+    tracer.buildSpan("unsampled").withTag(SAMPLING_PRIORITY.getKey(), 0).start().finish();
+    BraveSpan abandoned = tracer.buildSpan("abandoned").start();
+    abandoned.setTag(SAMPLING_PRIORITY.getKey(), 0);
+    abandoned.finish();
+    tracer.buildSpan("unfinished").start();
+
+    assertThat(metrics.getSpansStarted()).isEqualTo(4);
+    assertThat(metrics.getSpansFinished()).isEqualTo(1);
+    assertThat(metrics.getSpansDowngraded()).isEqualTo(1);
+    assertThat(metrics.getSpansAbandoned()).isEqualTo(1);
+    assertThat(spans).hasSize(1);
+  }
+
+  @Test public void spansDowngraded_notWhenParentDecides() {
+    BraveSpan parent = tracer.buildSpan("parent").start();
+    tracer.buildSpan("child").asChildOf(parent)
+        .withTag(SAMPLING_PRIORITY.getKey(), 0).start().finish();
+    parent.finish();
+
+    assertThat(metrics.getSpansDowngraded()).isZero();
+    assertThat(spans).hasSize(2);
+  }
+
+  @Test public void scopes() {
+    BraveSpan span = tracer.buildSpan("foo").start();
+    try (BraveScope scope = tracer.activateSpan(span)) {
+      tracer.activeSpan();
+    } finally {
+      span.finish();
+    }
+
+    assertThat(metrics.getActivateSpanCalls()).isEqualTo(1);
+    assertThat(metrics.getActiveSpanCalls()).isGreaterThanOrEqualTo(1);
+  }
+
+  @Test public void propagation() {
+    BraveSpan span = tracer.buildSpan("foo").start();
+    Map<String, String> map = new LinkedHashMap<>();
+    tracer.inject(span.context(), HTTP_HEADERS, new TextMapAdapter(map));
+    tracer.inject(span.context(), BINARY_INJECT, BinaryAdapters.injectionCarrier(
+        ByteBuffer.allocate(64)));
+    span.finish();
+
+    tracer.extract(HTTP_HEADERS, new TextMapAdapter(map));
+    tracer.extract(HTTP_HEADERS, new TextMapAdapter(new LinkedHashMap<>()));
+    tracer.extract(BINARY_EXTRACT, BinaryAdapters.extractionCarrier(ByteBuffer.allocate(0)));
+    tracer.extract(BINARY_EXTRACT, BinaryAdapters.extractionCarrier(
+        ByteBuffer.wrap(new byte[] {'c', 'a', 'f', 'e'})));
+
+    assertThat(metrics.injections(HTTP_HEADERS)).isEqualTo(1);
+    assertThat(metrics.injections(BINARY_INJECT)).isEqualTo(1);
+    assertThat(metrics.extractions(HTTP_HEADERS)).isEqualTo(2);
+    assertThat(metrics.extractions(BINARY_EXTRACT)).isEqualTo(2);
+    assertThat(metrics.injections(Format.Builtin.TEXT_MAP)).isZero();
+    assertThat(metrics.getInjections()).containsOnly(
+        entry(HTTP_HEADERS.toString(), 1L), entry(BINARY_INJECT.toString(), 1L));
+    assertThat(metrics.getExtractionMisses()).isEqualTo(3);
+    assertThat(metrics.getBinaryParseFailures()).isEqualTo(1);
+  }
+
+  @Test public void registersAsMXBean() throws Exception {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("brave.opentracing:type=BraveTracer,name=test");
+    server.registerMBean(metrics, name);
+    try {
+      tracer.buildSpan("foo").start().finish();
+
+      assertThat(server.getAttribute(name, "SpansStarted")).isEqualTo(1L);
+      assertThat(server.getAttribute(name, "SpansFinished")).isEqualTo(1L);
+    } finally {
+      server.unregisterMBean(name);
+    }
+  }
+
+  @Test public void counter() throws Exception {
+    Counter counter = new Counter();
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(() -> {
+        for (int j = 0; j < 1000; j++) counter.increment();
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads) thread.join();
+
+    assertThat(counter.get()).isEqualTo(4000);
+  }
+
+  @Test public void counter_cells() {
+    assertThat(Counter.cells(1)).isEqualTo(1);
+    assertThat(Counter.cells(3)).isEqualTo(4);
+    assertThat(Counter.cells(8)).isEqualTo(8);
+    assertThat(Counter.cells(64)).isEqualTo(16);
+  }
+}
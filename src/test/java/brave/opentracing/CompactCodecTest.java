@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.opentracing;
+
+import brave.baggage.BaggageField;
+import brave.baggage.BaggagePropagation;
+import brave.baggage.BaggagePropagationConfig.SingleBaggageField;
+import brave.opentracing.BinaryPropagation.CompactCodec;
+import brave.propagation.B3Propagation;
+import brave.propagation.Propagation;
+import brave.propagation.TraceContext;
+import brave.propagation.TraceContextOrSamplingFlags;
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static io.opentracing.propagation.BinaryAdapters.extractionCarrier;
+import static io.opentracing.propagation.BinaryAdapters.injectionCarrier;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(DataProviderRunner.class)
+public class CompactCodecTest {
+  static final BaggageField COUNTRY_CODE = BaggageField.create("country-code");
+  static final BaggageField USER_ID = BaggageField.create("user-id");
+  static final Propagation.Factory PROPAGATION_FACTORY =
+      BaggagePropagation.newFactoryBuilder(B3Propagation.FACTORY)
+          .add(SingleBaggageField.remote(COUNTRY_CODE))
+          .add(SingleBaggageField.remote(USER_ID))
+          .build();
+  static final TraceContext BASE = newContext();
+
+  CompactCodec codec = new CompactCodec(PROPAGATION_FACTORY, COUNTRY_CODE, USER_ID);
+
+  @DataProvider public static Object[] contexts() {
+    return new Object[] {
+        BASE,
+        BASE.toBuilder().sampled(true).build(),
+        BASE.toBuilder().sampled(false).build(),
+        BASE.toBuilder().debug(true).build(),
+        BASE.toBuilder().parentId(3L).build(),
+        BASE.toBuilder().parentId(3L).sampled(true).build(),
+        BASE.toBuilder().traceIdHigh(0xcafebabeL).traceId(-1L).spanId(Long.MIN_VALUE).build(),
+    };
+  }
+
+  @Test @UseDataProvider("contexts")
+  public void roundTrip(TraceContext context) {
+    TraceContextOrSamplingFlags extracted = codec.extract(extractionCarrier(inject(context)));
+
+    assertThat(extracted.context()).isEqualTo(context);
+    assertThat(extracted.context().sampled()).isEqualTo(context.sampled());
+    assertThat(extracted.context().debug()).isEqualTo(context.debug());
+    assertThat(extracted.context().parentIdAsLong()).isEqualTo(context.parentIdAsLong());
+  }
+
+  @Test public void inject_noBaggage_isCompact() {
+    // version, flags, traceId, spanId, count
+    assertThat(inject(BASE).remaining()).isEqualTo(19);
+  }
+
+  @Test public void roundTrip_baggage() {
+    TraceContext context = newContext();
+    COUNTRY_CODE.updateValue(context, "FO");
+    USER_ID.updateValue(context, "💩");
+
+    TraceContext extracted = codec.extract(extractionCarrier(inject(context))).context();
+
+    assertThat(COUNTRY_CODE.getValue(extracted)).isEqualTo("FO");
+    assertThat(USER_ID.getValue(extracted)).isEqualTo("💩");
+  }
+
+  @Test public void roundTrip_baggage_directBuffer() {
+    TraceContext context = newContext();
+    COUNTRY_CODE.updateValue(context, "FO");
+    ByteBuffer heap = inject(context);
+    ByteBuffer direct = ByteBuffer.allocateDirect(heap.remaining());
+    direct.put(heap).flip();
+
+    TraceContext extracted = codec.extract(extractionCarrier(direct)).context();
+
+    assertThat(COUNTRY_CODE.getValue(extracted)).isEqualTo("FO");
+    assertThat(direct.hasRemaining()).isFalse();
+  }
+
+  @Test public void extract_skipsUnconfiguredBaggage() {
+    TraceContext context = newContext();
+    COUNTRY_CODE.updateValue(context, "FO");
+    USER_ID.updateValue(context, "bob");
+
+    CompactCodec userIdOnly = new CompactCodec(PROPAGATION_FACTORY, USER_ID);
+    TraceContext extracted = userIdOnly.extract(extractionCarrier(inject(context))).context();
+
+    assertThat(COUNTRY_CODE.getValue(extracted)).isNull();
+    assertThat(USER_ID.getValue(extracted)).isEqualTo("bob");
+  }
+
+  @Test public void create_remoteFieldsOnly() {
+    BaggageField local = BaggageField.create("local");
+    Propagation.Factory factory = BaggagePropagation.newFactoryBuilder(B3Propagation.FACTORY)
+        .add(SingleBaggageField.remote(COUNTRY_CODE))
+        .add(SingleBaggageField.local(local))
+        .add(SingleBaggageField.newBuilder(USER_ID).addKeyName("x-user-id").build())
+        .build();
+
+    CompactCodec derived = CompactCodec.create(factory, factory.get());
+
+    assertThat(derived.fields).containsExactly(COUNTRY_CODE, USER_ID);
+  }
+
+  @Test public void create_noBaggage() {
+    CompactCodec derived = CompactCodec.create(B3Propagation.FACTORY, B3Propagation.get());
+
+    assertThat(derived.fields).isEmpty();
+  }
+
+  @Test public void extract_wrongVersion() {
+    ByteBuffer buffer = inject(BASE);
+    buffer.put(0, (byte) 1);
+
+    assertThat(codec.extract(extractionCarrier(buffer)))
+        .isSameAs(TraceContextOrSamplingFlags.EMPTY);
+  }
+
+  @Test public void extract_truncated() {
+    ByteBuffer buffer = inject(BASE);
+    buffer.limit(buffer.limit() - 2);
+
+    assertThat(codec.extract(extractionCarrier(buffer)))
+        .isSameAs(TraceContextOrSamplingFlags.EMPTY);
+  }
+
+  /** Baggage is mutable, so tests that set it must not share {@link #BASE}. */
+  static TraceContext newContext() {
+    return PROPAGATION_FACTORY.decorate(
+        TraceContext.newBuilder().traceId(1L).spanId(2L).build());
+  }
+
+  ByteBuffer inject(TraceContext context) {
+    ByteBuffer buffer = ByteBuffer.allocate(256);
+    codec.inject(context, injectionCarrier(buffer));
+    buffer.flip();
+    return buffer;
+  }
+}
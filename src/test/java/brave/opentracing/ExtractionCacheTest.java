@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.opentracing;
+
+import brave.Tracing;
+import brave.baggage.BaggageField;
+import brave.baggage.BaggagePropagation;
+import brave.baggage.BaggagePropagationConfig.SingleBaggageField;
+import brave.propagation.B3Propagation;
+import brave.propagation.TraceContext;
+import brave.propagation.TraceContextOrSamplingFlags;
+import io.opentracing.propagation.TextMapAdapter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Test;
+
+import static io.opentracing.propagation.Format.Builtin.HTTP_HEADERS;
+import static io.opentracing.propagation.Format.Builtin.TEXT_MAP;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ExtractionCacheTest {
+  Tracing brave = Tracing.newBuilder().build();
+  BraveTracer tracer = BraveTracer.newBuilder(brave).extractionCacheSize(16).build();
+  BraveTracerMetrics metrics = tracer.metrics();
+
+  @After public void close() {
+    brave.close();
+  }
+
+  @Test public void sameHeaders_hit() {
+    BraveSpanContext first = tracer.extract(HTTP_HEADERS, carrier(1L));
+    BraveSpanContext second = tracer.extract(HTTP_HEADERS, carrier(1L));
+    BraveSpanContext other = tracer.extract(HTTP_HEADERS, carrier(2L));
+
+    assertThat(second.unwrap()).isSameAs(first.unwrap());
+    assertThat(other.unwrap()).isNotSameAs(first.unwrap());
+    assertThat(metrics.getExtractionCacheHits()).isEqualTo(1);
+    assertThat(metrics.getExtractionCacheMisses()).isEqualTo(2);
+  }
+
+  @Test public void noContext_notCached() {
+    Map<String, String> unrelated = new LinkedHashMap<>();
+    unrelated.put("Content-Type", "application/json");
+    Map<String, String> malformed = new LinkedHashMap<>();
+    malformed.put("X-B3-TraceId", "cafebabe-is-not-hex");
+    malformed.put("X-B3-SpanId", "0000000000000002");
+
+    for (int i = 0; i < 2; i++) {
+      assertThat(tracer.extract(HTTP_HEADERS, new TextMapAdapter(unrelated))).isNull();
+      assertThat(tracer.extract(HTTP_HEADERS, new TextMapAdapter(malformed))).isNull();
+    }
+
+    assertThat(metrics.getExtractionCacheHits()).isZero();
+    assertThat(metrics.getExtractionCacheMisses()).isEqualTo(2); // only malformed has values
+  }
+
+  @Test public void evictsLeastRecentlyUsed() {
+    ExtractionCache cache = new ExtractionCache(2, metrics);
+    TraceContextOrSamplingFlags one = result(1L);
+    TraceContextOrSamplingFlags two = result(2L);
+    TraceContextOrSamplingFlags three = result(3L);
+
+    cache.put(new String[] {"1"}, one);
+    cache.put(new String[] {"2"}, two);
+    cache.get(new String[] {"1"}); // so that 2 is least recently used
+    cache.put(new String[] {"3"}, three);
+
+    assertThat(cache.stripes).hasSize(1);
+    assertThat(cache.get(new String[] {"1"})).isSameAs(one);
+    assertThat(cache.get(new String[] {"2"})).isNull();
+    assertThat(cache.get(new String[] {"3"})).isSameAs(three);
+    assertThat(metrics.getExtractionCacheEvictions()).isEqualTo(1);
+  }
+
+  @Test public void put_copiesValues() {
+    ExtractionCache cache = new ExtractionCache(2, metrics);
+    String[] scratch = {"1"};
+    TraceContextOrSamplingFlags one = result(1L);
+    cache.put(scratch, one);
+    scratch[0] = null;
+
+    assertThat(cache.get(new String[] {"1"})).isSameAs(one);
+  }
+
+  /** Only trace contexts are cached, so that arbitrary header values can't fill the cache. */
+  @Test public void samplingFlagsOnly_notCached() {
+    ExtractionCache cache = new ExtractionCache(2, metrics);
+    cache.put(new String[] {"1"}, TraceContextOrSamplingFlags.SAMPLED);
+
+    assertThat(cache.get(new String[] {"1"})).isNull();
+  }
+
+  @Test public void sharedAcrossFormatsWithSamePropagation() {
+    BraveSpanContext first = tracer.extract(HTTP_HEADERS, carrier(1L));
+    BraveSpanContext second = tracer.extract(TEXT_MAP, carrier(1L));
+
+    assertThat(second.unwrap()).isSameAs(first.unwrap());
+    assertThat(tracer.formatToExtractor.get(TEXT_MAP).cache)
+        .isSameAs(tracer.formatToExtractor.get(HTTP_HEADERS).cache);
+  }
+
+  @Test public void stripes() {
+    assertThat(new ExtractionCache(1, metrics).stripes).hasSize(1);
+    assertThat(new ExtractionCache(31, metrics).stripes).hasSize(1);
+    assertThat(new ExtractionCache(64, metrics).stripes).hasSize(4);
+    assertThat(new ExtractionCache(10_000, metrics).stripes).hasSize(16);
+    assertThat(new ExtractionCache(10_000, metrics).stripes[0].maxEntries).isEqualTo(625);
+  }
+
+  /** Baggage values can be updated after extraction, so they mustn't be shared. */
+  @Test public void baggage_notCached() {
+    BaggageField countryCode = BaggageField.create("country-code");
+    try (Tracing baggage = Tracing.newBuilder()
+        .propagationFactory(BaggagePropagation.newFactoryBuilder(B3Propagation.FACTORY)
+            .add(SingleBaggageField.remote(countryCode)).build())
+        .build()) {
+      tracer = BraveTracer.newBuilder(baggage).extractionCacheSize(16).build();
+
+      BraveSpanContext first = tracer.extract(HTTP_HEADERS, carrier(1L));
+      countryCode.updateValue(first.unwrap(), "FO");
+      BraveSpanContext second = tracer.extract(HTTP_HEADERS, carrier(1L));
+
+      assertThat(countryCode.getValue(second.unwrap())).isNull();
+      assertThat(tracer.metrics().getExtractionCacheMisses()).isZero();
+    }
+  }
+
+  @Test public void disabledByDefault() {
+    tracer = BraveTracer.create(brave);
+    tracer.extract(HTTP_HEADERS, carrier(1L));
+
+    assertThat(tracer.formatToExtractor.get(HTTP_HEADERS).cache).isNull();
+    assertThat(tracer.metrics().getExtractionCacheMisses()).isZero();
+  }
+
+  @Test public void extractionCacheSize_invalid() {
+    assertThatThrownBy(() -> BraveTracer.newBuilder(brave).extractionCacheSize(-1))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  static TraceContextOrSamplingFlags result(long spanId) {
+    return TraceContextOrSamplingFlags.create(
+        TraceContext.newBuilder().traceId(1L).spanId(spanId).build());
+  }
+
+  static TextMapAdapter carrier(long spanId) {
+    TraceContext context = TraceContext.newBuilder().traceId(1L).spanId(spanId).build();
+    Map<String, String> map = new LinkedHashMap<>();
+    map.put("X-B3-TraceId", context.traceIdString());
+    map.put("X-B3-SpanId", context.spanIdString());
+    return new TextMapAdapter(map);
+  }
+}
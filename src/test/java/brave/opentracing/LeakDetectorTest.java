@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.opentracing;
+
+import brave.Tracing;
+import brave.propagation.TraceContext;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LeakDetectorTest {
+  Tracing brave = Tracing.newBuilder().build();
+  BraveTracer tracer = BraveTracer.newBuilder(brave).leakDetectionRate(1.0f).build();
+  List<LogRecord> logged = new CopyOnWriteArrayList<>();
+  Handler handler = new Handler() {
+    @Override public void publish(LogRecord record) {
+      logged.add(record);
+    }
+
+    @Override public void flush() {
+    }
+
+    @Override public void close() {
+    }
+  };
+
+  @Before public void addHandler() {
+    LeakDetector.LOG.addHandler(handler);
+  }
+
+  @After public void close() {
+    LeakDetector.LOG.removeHandler(handler);
+    brave.close();
+  }
+
+  /**
+   * Leaks are simulated by enqueuing the tracked reference, as the garbage collector would, so that
+   * tests don't depend on when it runs.
+   */
+  @Test public void reportsUnfinishedSpan() {
+    BraveSpan span = tracer.buildSpan("leaky").start();
+
+    span.leak.enqueue();
+    tracer.leakDetector.reportLeaks();
+
+    assertThat(logged).hasSize(1);
+    assertThat(logged.get(0).getMessage()).startsWith("Span leaky (").endsWith("was not finished");
+    assertThat(logged.get(0).getThrown().getStackTrace())
+        .extracting(StackTraceElement::getMethodName)
+        .contains("reportsUnfinishedSpan");
+    assertThat(tracer.leakDetector.tracked).isEmpty();
+  }
+
+  @Test public void reportsUnclosedScope() {
+    BraveSpan span = tracer.buildSpan("foo").start();
+    BraveScope scope = tracer.activateSpan(span);
+    try {
+      scope.leak.enqueue();
+      tracer.leakDetector.reportLeaks();
+    } finally {
+      scope.close();
+      span.finish();
+    }
+
+    assertThat(logged).hasSize(1);
+    assertThat(logged.get(0).getMessage()).startsWith("Scope of span ")
+        .endsWith("was not closed");
+  }
+
+  @Test public void reportsLeaksWhenNextTracked() {
+    tracer.buildSpan("leaky").start().leak.enqueue();
+
+    tracer.buildSpan("next").start().finish();
+
+    assertThat(logged).hasSize(1);
+  }
+
+  @Test public void ignoresFinishedSpansAndClosedScopes() {
+    for (int i = 0; i < 10; i++) {
+      BraveSpan span = tracer.buildSpan("foo").start();
+      BraveScope scope = tracer.activateSpan(span);
+      scope.close();
+      span.finish();
+      // as if collected after close, such as when racing with it
+      scope.leak.enqueue();
+      span.leak.enqueue();
+    }
+
+    tracer.leakDetector.reportLeaks();
+    assertThat(tracer.leakDetector.tracked).isEmpty();
+    assertThat(logged).isEmpty();
+  }
+
+  @Test public void tracksNothingByDefault() {
+    tracer = BraveTracer.create(brave);
+    BraveSpan span = tracer.buildSpan("foo").start();
+
+    assertThat(span.leak).isNull();
+    assertThat(tracer.leakDetector).isSameAs(LeakDetector.NOOP);
+  }
+
+  @Test public void isSampled_bySpanId() {
+    LeakDetector detector = new LeakDetector(0.5f);
+    TraceContext.Builder context = TraceContext.newBuilder().traceId(1L);
+
+    assertThat(detector.isSampled(context.spanId(0x10000L).build())).isTrue();
+    assertThat(detector.isSampled(context.spanId(0x17fffL).build())).isTrue();
+    assertThat(detector.isSampled(context.spanId(0x18000L).build())).isFalse();
+    assertThat(detector.isSampled(context.spanId(0x1ffffL).build())).isFalse();
+  }
+
+  @Test public void leakDetectionRate_invalid() {
+    assertThatThrownBy(() -> BraveTracer.newBuilder(brave).leakDetectionRate(1.1f))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> BraveTracer.newBuilder(brave).leakDetectionRate(-0.1f))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
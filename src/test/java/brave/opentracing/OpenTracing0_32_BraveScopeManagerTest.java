@@ -15,6 +15,7 @@ package brave.opentracing;
 
 import brave.ScopedSpan;
 import brave.Tracing;
+import brave.handler.MutableSpan;
 import brave.propagation.StrictCurrentTraceContext;
 import brave.test.TestSpanHandler;
 import io.opentracing.Scope;
@@ -42,7 +43,7 @@ public class OpenTracing0_32_BraveScopeManagerTest {
     try (Scope scopeA = opentracing.scopeManager().activate(span, false)) {
       assertThat(opentracing.scopeManager().active().span())
           .isEqualTo(span);
-      //Call again to ensure the ThreadLocal cache works
+      //Call again to ensure the same instance is returned
       assertThat(opentracing.scopeManager().active().span())
           .isEqualTo(span);
     }
@@ -86,4 +87,33 @@ public class OpenTracing0_32_BraveScopeManagerTest {
       scopeB.close();
     }
   }
+
+  @Test public void scopeManagerActive_finishSpanOnClose() {
+    BraveSpan span = opentracing.buildSpan("spanA").start();
+
+    opentracing.scopeManager().activate(span, true).close();
+
+    assertThat(spans).extracting(MutableSpan::name).containsExactly("spanA");
+    assertThat(opentracing.scopeManager().active())
+        .isNull();
+  }
+
+  /** The active span is whatever Brave has in scope, so they can't disagree */
+  @Test public void scopeManagerActive_bridgesNormalBraveInsideScope() {
+    BraveSpan spanA = opentracing.buildSpan("spanA").start();
+
+    try (Scope scopeA = opentracing.scopeManager().activate(spanA, false)) {
+      ScopedSpan spanB = brave.tracer().startScopedSpan("spanB");
+      try {
+        assertThat(opentracing.scopeManager().active().span())
+            .extracting("delegate.context")
+            .isEqualTo(spanB.context());
+      } finally {
+        spanB.finish();
+      }
+
+      assertThat(opentracing.scopeManager().active().span())
+          .isSameAs(spanA);
+    }
+  }
 }
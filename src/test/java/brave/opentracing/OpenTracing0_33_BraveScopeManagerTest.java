@@ -16,12 +16,16 @@ package brave.opentracing;
 import brave.ScopedSpan;
 import brave.Tracing;
 import brave.propagation.StrictCurrentTraceContext;
+import brave.propagation.TraceContext;
 import brave.test.TestSpanHandler;
 import io.opentracing.Scope;
+import io.opentracing.tag.Tags;
+import java.util.Collections;
 import org.junit.After;
 import org.junit.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 
 public class OpenTracing0_33_BraveScopeManagerTest {
   StrictCurrentTraceContext currentTraceContext = StrictCurrentTraceContext.create();
@@ -74,4 +78,100 @@ public class OpenTracing0_33_BraveScopeManagerTest {
           .isEqualTo(spanA.context().unwrap());
     }
   }
+
+  @Test public void activeSpan_sameInstanceAsActivated() {
+    BraveSpan span = opentracing.buildSpan("spanA").start();
+
+    try (Scope scopeA = opentracing.scopeManager().activate(span)) {
+      assertThat(opentracing.scopeManager().activeSpan()).isSameAs(span);
+      assertThat(opentracing.activeSpan()).isSameAs(span);
+    }
+  }
+
+  /** The scope keeps the span reachable, as the context in scope only references it weakly. */
+  @Test public void activeSpan_sameInstanceWhenOnlyScopeHeld() {
+    try (BraveScope scope = opentracing.activateSpan(opentracing.buildSpan("spanA").start())) {
+      System.gc(); // would clear the span if only weakly reachable
+
+      assertThat(opentracing.activeSpan()).isSameAs(scope.span);
+      scope.span.finish();
+    }
+  }
+
+  /** The wrapper never finishes the span, so numeric tags can't wait until then. */
+  @Test public void activeSpan_bridgesNormalBrave_numberTag() {
+    ScopedSpan spanA = brave.tracer().startScopedSpan("spanA");
+    try {
+      Tags.HTTP_STATUS.set(opentracing.activeSpan(), 500);
+    } finally {
+      spanA.finish();
+    }
+
+    assertThat(spans.get(0).tags()).containsEntry("http.status_code", "500");
+  }
+
+  /** The wrapper never finishes the span, so logs can't wait until then. */
+  @Test public void activeSpan_bridgesNormalBrave_logFields() {
+    ScopedSpan spanA = brave.tracer().startScopedSpan("spanA");
+    try {
+      opentracing.activeSpan().log(2L, Collections.singletonMap("event", "error"));
+    } finally {
+      spanA.finish();
+    }
+
+    assertThat(spans.get(0).annotations()).containsExactly(entry(2L, "error"));
+  }
+
+  @Test public void activeSpan_childInScopeWithBrave() {
+    BraveSpan spanA = opentracing.buildSpan("spanA").start();
+
+    try (Scope scopeA = opentracing.scopeManager().activate(spanA)) {
+      ScopedSpan spanB = brave.tracer().startScopedSpan("spanB");
+      try {
+        assertThat(opentracing.scopeManager().activeSpan())
+            .isNotSameAs(spanA)
+            .extracting("delegate.context")
+            .isEqualTo(spanB.context());
+      } finally {
+        spanB.finish();
+      }
+      assertThat(opentracing.scopeManager().activeSpan()).isSameAs(spanA);
+    }
+  }
+
+  @Test public void activeSpan_childOnlyHasOwnSpanInExtra() {
+    BraveSpan spanA = opentracing.buildSpan("spanA").start();
+
+    try (Scope scopeA = opentracing.scopeManager().activate(spanA)) {
+      BraveSpan spanB = opentracing.buildSpan("spanB").start();
+      try (Scope scopeB = opentracing.scopeManager().activate(spanB)) {
+        assertThat(brave.currentTraceContext().get().extra())
+            .filteredOn(BraveSpan.ActivatedSpan.class::isInstance)
+            .extracting(extra -> ((BraveSpan.ActivatedSpan) extra).get())
+            .containsExactly(spanB);
+      }
+    }
+  }
+
+  /** Contexts derived from an activated span mustn't keep it reachable. */
+  @Test public void activeSpan_childDoesntReferenceParentSpan() {
+    BraveSpan spanA = opentracing.buildSpan("spanA").start();
+
+    try (Scope scopeA = opentracing.scopeManager().activate(spanA)) {
+      TraceContext child = brave.tracer().nextSpan().context();
+
+      assertThat(child.extra()).noneMatch(BraveSpan.class::isInstance);
+      assertThat(opentracing.scopeManager().activeSpan()).isSameAs(spanA);
+    }
+  }
+
+  @Test public void activate_afterSamplingPriorityZero() {
+    BraveSpan span = opentracing.buildSpan("spanA").start();
+    span.setTag(Tags.SAMPLING_PRIORITY.getKey(), 0);
+
+    try (Scope scopeA = opentracing.scopeManager().activate(span)) {
+      assertThat(brave.currentTraceContext().get().sampled()).isFalse();
+      assertThat(opentracing.scopeManager().activeSpan()).isSameAs(span);
+    }
+  }
 }
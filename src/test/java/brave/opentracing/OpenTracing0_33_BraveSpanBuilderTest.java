@@ -63,6 +63,7 @@ public class OpenTracing0_33_BraveSpanBuilderTest {
 
   BraveSpanBuilder newSpanBuilder() {
     // hijacking nullability as tracer isn't referenced until build, making easier comparisons
-    return new BraveSpanBuilder(brave, "foo");
+    return new BraveSpanBuilder(brave, LogFieldsFormatter.DEFAULT, new BraveTracerMetrics(),
+        LeakDetector.NOOP, "foo");
   }
 }
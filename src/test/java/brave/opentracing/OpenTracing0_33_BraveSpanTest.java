@@ -26,13 +26,23 @@ import brave.test.TestSpanHandler;
 import com.tngtech.java.junit.dataprovider.DataProvider;
 import com.tngtech.java.junit.dataprovider.DataProviderRunner;
 import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import io.opentracing.Scope;
 import io.opentracing.Span;
 import io.opentracing.SpanContext;
 import io.opentracing.propagation.TextMapAdapter;
+import io.opentracing.tag.StringTag;
 import io.opentracing.tag.Tag;
 import io.opentracing.tag.Tags;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -41,6 +51,7 @@ import org.junit.runner.RunWith;
 import static io.opentracing.propagation.Format.Builtin.TEXT_MAP;
 import static io.opentracing.tag.Tags.SAMPLING_PRIORITY;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.Assertions.entry;
 
 @RunWith(DataProviderRunner.class)
@@ -66,6 +77,15 @@ public class OpenTracing0_33_BraveSpanTest {
     tracer = BraveTracer.create(brave);
   }
 
+  void initWithoutBaggage() {
+    brave.close();
+    brave = Tracing.newBuilder()
+        .currentTraceContext(currentTraceContext)
+        .addSpanHandler(spans)
+        .build();
+    tracer = BraveTracer.create(brave);
+  }
+
   @After public void clear() {
     brave.close();
     currentTraceContext.close();
@@ -108,6 +128,22 @@ public class OpenTracing0_33_BraveSpanTest {
         .containsEntry("span.kind", "antelope");
   }
 
+  @Test public void spanKind_beforeStart_lastValueWins() {
+    tracer.buildSpan("foo")
+        .withTag(Tags.SPAN_KIND.getKey(), "antelope")
+        .withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_CLIENT)
+        .start().finish();
+    tracer.buildSpan("bar")
+        .withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_CLIENT)
+        .withTag(Tags.SPAN_KIND.getKey(), "antelope")
+        .start().finish();
+
+    assertThat(spans.get(0).kind()).isEqualTo(Kind.CLIENT);
+    assertThat(spans.get(0).tags()).isEmpty();
+    assertThat(spans.get(1).kind()).isNull();
+    assertThat(spans.get(1).tags()).containsOnly(entry("span.kind", "antelope"));
+  }
+
   @Test @UseDataProvider("dataProviderKind")
   public void spanKind_afterStart(String tagValue, Kind kind) {
     tracer.buildSpan("foo")
@@ -224,6 +260,48 @@ public class OpenTracing0_33_BraveSpanTest {
     serverSpan.finish();
   }
 
+  @Test public void baggageItems_view() {
+    BraveSpan span = tracer.buildSpan("foo").start();
+    Iterable<Map.Entry<String, String>> baggageItems = span.context().baggageItems();
+    assertThat(baggageItems).isEmpty();
+
+    span.setBaggageItem("client-id", "aloha");
+    assertThat(baggageItems).containsExactly(entry("client-id", "aloha"));
+    assertThat(baggageItems).hasToString("[client-id=aloha]");
+    // iterating again reuses the entry, as the value didn't change
+    assertThat(baggageItems.iterator().next()).isSameAs(baggageItems.iterator().next());
+
+    span.setBaggageItem("client-id", "bonjour");
+    assertThat(baggageItems).containsExactly(entry("client-id", "bonjour"));
+    assertThatThrownBy(() -> baggageItems.iterator().remove())
+        .isInstanceOf(UnsupportedOperationException.class);
+    span.finish();
+  }
+
+  @Test public void getBaggageItem() {
+    BraveSpan span = tracer.buildSpan("foo").start();
+    span.setBaggageItem("client-id", "aloha");
+
+    assertThat(span.context().getBaggageItem("client-id")).isEqualTo("aloha");
+    assertThat(span.context().getBaggageItem(" client-id ")).isEqualTo("aloha");
+    assertThat(span.context().getBaggageItem("user-id")).isNull();
+    assertThatThrownBy(() -> span.context().getBaggageItem(""))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> span.context().getBaggageItem(null))
+        .isInstanceOf(NullPointerException.class);
+    span.finish();
+  }
+
+  @Test public void getBaggageItem_noBaggagePropagation() {
+    initWithoutBaggage();
+    BraveSpan span = tracer.buildSpan("foo").start();
+    span.setBaggageItem("client-id", "aloha");
+
+    assertThat(span.getBaggageItem("client-id")).isNull();
+    assertThat(span.context().baggageItems()).isEmpty();
+    span.finish();
+  }
+
   @Test public void samplingPriority_sampledWhenAtStart() {
     init(Tracing.newBuilder().sampler(Sampler.NEVER_SAMPLE));
 
@@ -250,6 +328,124 @@ public class OpenTracing0_33_BraveSpanTest {
     assertThat(spans).isEmpty();
   }
 
+  @Test public void unsampled_noopBraveSpan() {
+    init(Tracing.newBuilder().sampler(Sampler.NEVER_SAMPLE));
+
+    BraveSpan span = tracer.buildSpan("foo")
+        .withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_PRODUCER)
+        .withTag("hello", "monster")
+        .start();
+
+    assertThat(span).isInstanceOf(NoopBraveSpan.class);
+    assertThat(span.context().unwrap().sampled()).isFalse();
+    assertThat(span.context().kind).isEqualTo(Kind.PRODUCER);
+
+    span.setBaggageItem("client-id", "aloha");
+    assertThat(span.getBaggageItem("client-id")).isEqualTo("aloha");
+
+    try (Scope scope = tracer.activateSpan(span)) {
+      assertThat(tracer.activeSpan()).isSameAs(span);
+    }
+
+    // producer spans inject b3 single format by default
+    Map<String, String> carrier = new LinkedHashMap<>();
+    tracer.inject(span.context(), TEXT_MAP, new TextMapAdapter(carrier));
+    assertThat(carrier)
+        .containsEntry("b3", span.context().unwrap().traceIdString() + "-"
+            + span.context().unwrap().spanIdString() + "-0")
+        .containsEntry("client-id", "aloha");
+
+    span.setTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_CLIENT);
+    assertThat(span.context().kind).isEqualTo(Kind.CLIENT);
+
+    span.finish();
+    assertThat(spans).isEmpty();
+  }
+
+  /** Catches a new mutator on BraveSpan that would otherwise record data on an unsampled span. */
+  @Test public void noopBraveSpan_overridesMutators() throws Exception {
+    List<String> unchanged =
+        Arrays.asList("context", "getBaggageItem", "setBaggageItem", "toString");
+    for (Method method : BraveSpan.class.getDeclaredMethods()) {
+      int modifiers = method.getModifiers();
+      if (!Modifier.isPublic(modifiers) || Modifier.isFinal(modifiers)) continue;
+      if (Modifier.isStatic(modifiers) || method.isSynthetic()) continue;
+      if (unchanged.contains(method.getName())) continue;
+      if (method.getName().equals("setTag") && method.getParameterTypes()[0] == Tag.class) {
+        continue; // dispatches to the other setTag methods
+      }
+
+      assertThat(NoopBraveSpan.class.getDeclaredMethod(method.getName(),
+          method.getParameterTypes())).isNotNull();
+    }
+  }
+
+  @Test public void inject_reusesEncodedHeaders() {
+    initWithoutBaggage();
+    BraveSpan span = tracer.buildSpan("foo")
+        .withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_PRODUCER)
+        .start();
+
+    Map<String, String> carrier1 = new LinkedHashMap<>(), carrier2 = new LinkedHashMap<>(),
+        carrier3 = new LinkedHashMap<>();
+    tracer.inject(span.context(), TEXT_MAP, new TextMapAdapter(carrier1));
+    tracer.inject(span.context(), TEXT_MAP, new TextMapAdapter(carrier2));
+    Object encoded = ((BraveSpanContext.Complete) span.context()).encodedHeaders;
+    tracer.inject(span.context(), TEXT_MAP, new TextMapAdapter(carrier3));
+
+    assertThat(encoded).isNotNull()
+        .isSameAs(((BraveSpanContext.Complete) span.context()).encodedHeaders);
+    assertThat(carrier3).isEqualTo(carrier2).isEqualTo(carrier1)
+        .containsEntry("b3", span.context().unwrap().traceIdString() + "-"
+            + span.context().unwrap().spanIdString() + "-1");
+
+    // a different injector replaces the cached headers
+    span.setTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_CLIENT);
+    Map<String, String> carrier4 = new LinkedHashMap<>();
+    tracer.inject(span.context(), TEXT_MAP, new TextMapAdapter(carrier4));
+    assertThat(carrier4).containsKeys("X-B3-TraceId", "X-B3-SpanId").doesNotContainKey("b3");
+  }
+
+  /** Encoding allocates, so it isn't worth it until the same context is injected again. */
+  @Test public void inject_once_doesntEncodeHeaders() {
+    initWithoutBaggage();
+    BraveSpan span = tracer.buildSpan("foo").start();
+
+    Map<String, String> carrier = new LinkedHashMap<>();
+    tracer.inject(span.context(), TEXT_MAP, new TextMapAdapter(carrier));
+
+    assertThat(((BraveSpanContext.Complete) span.context()).encodedHeaders).isNull();
+    assertThat(carrier).containsKeys("X-B3-TraceId", "X-B3-SpanId");
+  }
+
+  @Test public void inject_samplingPriorityZero_dropsEncodedHeaders() {
+    initWithoutBaggage();
+    BraveSpan span = tracer.buildSpan("foo").start();
+    tracer.inject(span.context(), TEXT_MAP, new TextMapAdapter(new LinkedHashMap<>()));
+    tracer.inject(span.context(), TEXT_MAP, new TextMapAdapter(new LinkedHashMap<>()));
+    assertThat(((BraveSpanContext.Complete) span.context()).encodedHeaders).isNotNull();
+
+    span.setTag(SAMPLING_PRIORITY.getKey(), 0);
+
+    Map<String, String> carrier = new LinkedHashMap<>();
+    tracer.inject(span.context(), TEXT_MAP, new TextMapAdapter(carrier));
+    assertThat(carrier).containsEntry("X-B3-Sampled", "0");
+  }
+
+  /** Baggage can change after injection, so headers aren't cached when it is propagated. */
+  @Test public void inject_remoteBaggage_notCached() {
+    BraveSpan span = tracer.buildSpan("foo").start();
+    span.setBaggageItem("client-id", "aloha");
+    tracer.inject(span.context(), TEXT_MAP, new TextMapAdapter(new LinkedHashMap<>()));
+
+    assertThat(((BraveSpanContext.Complete) span.context()).encodedHeaders).isNull();
+
+    span.setBaggageItem("client-id", "bonjour");
+    Map<String, String> carrier = new LinkedHashMap<>();
+    tracer.inject(span.context(), TEXT_MAP, new TextMapAdapter(carrier));
+    assertThat(carrier).containsEntry("client-id", "bonjour");
+  }
+
   @Test public void samplingPriority_abandonsAndUnsampledAfterStart() {
     BraveSpan span = tracer.buildSpan("foo")
         .start();
@@ -282,6 +478,65 @@ public class OpenTracing0_33_BraveSpanTest {
     assertThat(spans.get(0).remotePort()).isEqualTo(8080);
   }
 
+  @Test public void setPeerTags_beforeStart_numericIpV4() {
+    tracer.buildSpan("encode")
+        .withTag(Tags.PEER_HOST_IPV4.getKey(), 0x01020304)
+        .withTag(Tags.PEER_PORT.getKey(), 8080)
+        .start().finish();
+
+    assertThat(spans.get(0).remoteIp()).isEqualTo("1.2.3.4");
+    assertThat(spans.get(0).tags()).isEmpty();
+  }
+
+  @Test public void setPeerTags_afterStart_numericIpV6() {
+    tracer.buildSpan("encode")
+        .start()
+        .setTag(Tags.PEER_HOST_IPV6.getKey(),
+            new BigInteger("20010db800000000000000000000c001", 16))
+        .setTag(Tags.PEER_PORT.getKey(), 8080)
+        .finish();
+
+    assertThat(spans.get(0).remoteIp()).isEqualTo("2001:db8::c001");
+    assertThat(spans.get(0).tags()).isEmpty();
+  }
+
+  @Test public void setPeerTags_lastIpWins() {
+    tracer.buildSpan("encode")
+        .withTag(Tags.PEER_HOST_IPV4.getKey(), "5.6.7.8")
+        .withTag(Tags.PEER_HOST_IPV4.getKey(), 0x01020304)
+        .start()
+        .finish();
+    tracer.buildSpan("encode")
+        .start()
+        .setTag(Tags.PEER_HOST_IPV4.getKey(), 0x01020304)
+        .setTag(Tags.PEER_HOST_IPV4.getKey(), "5.6.7.8")
+        .finish();
+
+    assertThat(spans).extracting(MutableSpan::remoteIp).containsExactly("1.2.3.4", "5.6.7.8");
+  }
+
+  @Test public void ipv4String() {
+    assertThat(BraveSpan.ipv4String(0)).isEqualTo("0.0.0.0");
+    assertThat(BraveSpan.ipv4String(0x7f000001)).isEqualTo("127.0.0.1");
+    assertThat(BraveSpan.ipv4String(0xffffffff)).isEqualTo("255.255.255.255");
+    assertThat(BraveSpan.ipv4String(0x0a64090c)).isEqualTo("10.100.9.12");
+  }
+
+  @Test public void ipv6String() {
+    assertThat(BraveSpan.ipv6String(BigInteger.ZERO)).isEqualTo("::");
+    assertThat(BraveSpan.ipv6String(1L)).isEqualTo("::1");
+    assertThat(BraveSpan.ipv6String(new BigInteger("20010db8000000000000000000000001", 16)))
+        .isEqualTo("2001:db8::1");
+    assertThat(BraveSpan.ipv6String(new BigInteger("20010db8000000010000000000000001", 16)))
+        .isEqualTo("2001:db8:0:1::1"); // longest run wins
+    assertThat(BraveSpan.ipv6String(new BigInteger("20010db8000000000001000000000001", 16)))
+        .isEqualTo("2001:db8::1:0:0:1"); // first run wins a tie
+    assertThat(BraveSpan.ipv6String(new BigInteger("20010db8000000010001000100010001", 16)))
+        .isEqualTo("2001:db8:0:1:1:1:1:1"); // a single zero group isn't compressed
+    assertThat(BraveSpan.ipv6String(new BigInteger("ffffffffffffffffffffffffffffffff", 16)))
+        .isEqualTo("ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff");
+  }
+
   @Test public void setPeerTags_afterStart() {
     tracer.buildSpan("encode")
         .start()
@@ -306,6 +561,17 @@ public class OpenTracing0_33_BraveSpanTest {
     assertContainsTags();
   }
 
+  @Test public void withTag_many_lastValueWins() {
+    BraveSpanBuilder builder = tracer.buildSpan("encode");
+    for (int i = 0; i < 10; i++) builder.withTag("tag" + i, i);
+    builder.withTag("tag0", "zero").start().finish();
+
+    assertThat(spans.get(0).tags())
+        .hasSize(10)
+        .containsEntry("tag0", "zero")
+        .containsEntry("tag9", "9");
+  }
+
   @Test public void withTag_object() {
     tracer.buildSpan("encode")
         .withTag(Tags.HTTP_METHOD, "GET")
@@ -336,6 +602,202 @@ public class OpenTracing0_33_BraveSpanTest {
     assertContainsTags();
   }
 
+  @Test public void setTag_number_lastValueWins() {
+    tracer.buildSpan("encode").start()
+        .setTag("a", 1)
+        .setTag("a", "one")
+        .setTag("b", "two")
+        .setTag("b", 2)
+        .setTag("c", 3)
+        .setTag("c", 4)
+        .finish();
+
+    assertThat(spans.get(0).tags())
+        .containsOnly(entry("a", "one"), entry("b", "2"), entry("c", "4"));
+  }
+
+  @Test public void setTag_number_notFormattedWhenUnsampled() {
+    init(Tracing.newBuilder().sampler(Sampler.NEVER_SAMPLE));
+    ToStringCounter value = new ToStringCounter();
+
+    tracer.buildSpan("encode").withTag("a", value).start()
+        .setTag("b", value)
+        .finish();
+
+    assertThat(value.toStringCount).isZero();
+  }
+
+  @Test public void setTag_number_notFormattedWhenUnsampledAfterTagging() {
+    ToStringCounter value = new ToStringCounter();
+
+    tracer.buildSpan("encode").start()
+        .setTag("a", value)
+        .setTag(SAMPLING_PRIORITY.getKey(), 0)
+        .finish();
+
+    assertThat(value.toStringCount).isZero();
+    assertThat(spans).isEmpty();
+  }
+
+  @Test public void setTag_number_null() {
+    BraveSpan span = tracer.buildSpan("encode").start().setTag("a", 1);
+
+    assertThatThrownBy(() -> span.setTag("b", (Number) null))
+        .isInstanceOf(NullPointerException.class);
+    span.finish();
+
+    assertThat(spans.get(0).tags()).containsOnly(entry("a", "1"));
+  }
+
+  @Test public void setTag_number_toStringThrows_dropsTagAndFinishes() {
+    tracer.buildSpan("encode").start()
+        .setTag("a", 1)
+        .setTag("b", new ToStringCounter() {
+          @Override public String toString() {
+            throw new IllegalStateException("boom");
+          }
+        })
+        .finish();
+
+    assertThat(spans.get(0).tags()).containsOnly(entry("a", "1"));
+  }
+
+  @Test public void setTag_number_atomicReadWhenSet() {
+    AtomicLong value = new AtomicLong(1L);
+
+    BraveSpan span = tracer.buildSpan("encode").start().setTag("a", value);
+    value.set(2L);
+    span.finish();
+
+    assertThat(spans.get(0).tags()).containsOnly(entry("a", "1"));
+  }
+
+  static class ToStringCounter extends Number {
+    int toStringCount;
+
+    @Override public int intValue() {
+      return 1;
+    }
+
+    @Override public long longValue() {
+      return 1L;
+    }
+
+    @Override public float floatValue() {
+      return 1F;
+    }
+
+    @Override public double doubleValue() {
+      return 1D;
+    }
+
+    @Override public String toString() {
+      toStringCount++;
+      return "1";
+    }
+  }
+
+  @Test public void log_fields() {
+    Map<String, Object> fields = new LinkedHashMap<>();
+    fields.put("event", "error");
+    fields.put("error.kind", "IllegalStateException");
+    fields.put("retries", 3);
+
+    tracer.buildSpan("encode").start()
+        .log(2L, fields)
+        .finish();
+
+    assertThat(spans.get(0).annotations())
+        .containsExactly(entry(2L, "event=error error.kind=IllegalStateException retries=3"));
+  }
+
+  @Test public void log_fields_mapReusedBeforeFinish() {
+    Map<String, Object> fields = new LinkedHashMap<>();
+    fields.put("event", "retry");
+    BraveSpan span = tracer.buildSpan("encode").start().log(2L, fields);
+
+    fields.put("event", "error");
+    fields.put("retries", 3);
+    span.log(3L, fields);
+    fields.clear();
+    span.finish();
+
+    assertThat(spans.get(0).annotations())
+        .containsExactly(entry(2L, "retry"), entry(3L, "event=error retries=3"));
+  }
+
+  @Test public void log_fields_onlyEvent() {
+    tracer.buildSpan("encode").start()
+        .log(2L, Collections.singletonMap("event", "retry"))
+        .finish();
+
+    assertThat(spans.get(0).annotations())
+        .containsExactly(entry(2L, "retry"));
+  }
+
+  @Test public void log_fields_usesSpanClock() {
+    BraveSpan span = tracer.buildSpan("encode").withStartTimestamp(1L).start();
+    long beforeLog = brave.clock(span.context().unwrap()).currentTimeMicroseconds();
+    span.log(Collections.singletonMap("event", "retry"));
+    span.finish();
+
+    assertThat(spans.get(0).annotations()).hasSize(1);
+    assertThat(spans.get(0).annotations().iterator().next().getKey())
+        .isGreaterThanOrEqualTo(beforeLog);
+  }
+
+  @Test public void log_fields_valueFormatter() {
+    tracer = BraveTracer.newBuilder(brave)
+        .logValueFormatter(Throwable.class, (e, result) -> result.append(e.getClass().getName()))
+        .build();
+
+    tracer.buildSpan("encode").start()
+        .log(2L, Collections.singletonMap("error.object", new IllegalStateException("boom")))
+        .finish();
+
+    assertThat(spans.get(0).annotations())
+        .containsExactly(entry(2L, "error.object=java.lang.IllegalStateException"));
+  }
+
+  @Test public void log_fields_valueFormatterThrows_dropsAnnotationAndFinishes() {
+    tracer = BraveTracer.newBuilder(brave)
+        .logValueFormatter(Throwable.class, (e, result) -> {
+          throw new IllegalStateException("boom");
+        })
+        .build();
+
+    tracer.buildSpan("encode").start()
+        .log(2L, Collections.singletonMap("error.object", new IllegalStateException("boom")))
+        .log(3L, Collections.singletonMap("event", "retry"))
+        .finish();
+
+    assertThat(spans.get(0).annotations())
+        .containsExactly(entry(3L, "retry"));
+  }
+
+  @Test public void log_fields_notFormattedWhenUnsampled() {
+    init(Tracing.newBuilder().sampler(Sampler.NEVER_SAMPLE));
+    ToStringCounter value = new ToStringCounter();
+
+    tracer.buildSpan("encode").start()
+        .log(Collections.singletonMap("retries", value))
+        .finish();
+
+    assertThat(value.toStringCount).isZero();
+  }
+
+  @Test public void log_fields_notFormattedWhenUnsampledAfterLogging() {
+    ToStringCounter value = new ToStringCounter();
+
+    tracer.buildSpan("encode").start()
+        .log(Collections.singletonMap("retries", value))
+        .setTag(SAMPLING_PRIORITY.getKey(), 0)
+        .finish();
+
+    assertThat(value.toStringCount).isZero();
+    assertThat(spans).isEmpty();
+  }
+
   void assertContainsTags() {
     assertThat(spans.get(0).tags())
         .containsEntry("http.method", "GET")
@@ -361,6 +823,49 @@ public class OpenTracing0_33_BraveSpanTest {
         .containsEntry("exception", "RuntimeException");
   }
 
+  @Test public void setTag_stringTagSubtype() {
+    StringTag upperCase = new StringTag("method") {
+      @Override public void set(Span span, String value) {
+        super.set(span, value.toUpperCase(Locale.ROOT));
+      }
+    };
+
+    tracer.buildSpan("encode").start()
+        .setTag(upperCase, "get").finish();
+
+    assertThat(spans.get(0).tags())
+        .containsEntry("method", "GET");
+  }
+
+  @Test public void setTag_specialKeys() {
+    tracer.buildSpan("encode").start()
+        .setTag(Tags.PEER_SERVICE, "jupiter")
+        .setTag(Tags.PEER_HOST_IPV4, 0x01020304)
+        .setTag(Tags.PEER_PORT, 8080)
+        .setTag(Tags.ERROR, false)
+        .finish();
+
+    assertThat(spans.get(0).remoteServiceName()).isEqualTo("jupiter");
+    assertThat(spans.get(0).remoteIp()).isEqualTo("1.2.3.4");
+    assertThat(spans.get(0).remotePort()).isEqualTo(8080);
+    assertThat(spans.get(0).tags()).isEmpty();
+  }
+
+  @Test public void specialTag_sameKeysAsTags() {
+    assertThat(BraveSpan.specialTag(Tags.SPAN_KIND.getKey())).isEqualTo(BraveSpan.TAG_SPAN_KIND);
+    assertThat(BraveSpan.specialTag(Tags.PEER_SERVICE.getKey()))
+        .isEqualTo(BraveSpan.TAG_PEER_SERVICE);
+    assertThat(BraveSpan.specialTag(Tags.PEER_HOST_IPV4.getKey()))
+        .isEqualTo(BraveSpan.TAG_PEER_HOST_IPV4);
+    assertThat(BraveSpan.specialTag(Tags.PEER_HOST_IPV6.getKey()))
+        .isEqualTo(BraveSpan.TAG_PEER_HOST_IPV6);
+    assertThat(BraveSpan.specialTag(Tags.PEER_PORT.getKey())).isEqualTo(BraveSpan.TAG_PEER_PORT);
+    assertThat(BraveSpan.specialTag(Tags.ERROR.getKey())).isEqualTo(BraveSpan.TAG_ERROR);
+    assertThat(BraveSpan.specialTag(SAMPLING_PRIORITY.getKey()))
+        .isEqualTo(BraveSpan.TAG_SAMPLING_PRIORITY);
+    assertThat(BraveSpan.specialTag(Tags.HTTP_URL.getKey())).isEqualTo(BraveSpan.TAG_OTHER);
+  }
+
   /** There is no javadoc, but we were told only string, bool or number? */
   @Test(expected = IllegalArgumentException.class)
   public void withTag_custom_unsupported() {
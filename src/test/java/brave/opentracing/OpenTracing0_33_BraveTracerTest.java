@@ -28,12 +28,17 @@ import com.tngtech.java.junit.dataprovider.DataProvider;
 import com.tngtech.java.junit.dataprovider.DataProviderRunner;
 import com.tngtech.java.junit.dataprovider.UseDataProvider;
 import io.opentracing.Scope;
+import io.opentracing.propagation.BinaryInject;
 import io.opentracing.propagation.Format;
 import io.opentracing.propagation.TextMap;
 import io.opentracing.propagation.TextMapAdapter;
 import io.opentracing.tag.Tags;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import org.junit.After;
 import org.junit.Test;
@@ -48,6 +53,7 @@ import static io.opentracing.propagation.Format.Builtin.TEXT_MAP;
 import static io.opentracing.propagation.Format.Builtin.TEXT_MAP_EXTRACT;
 import static io.opentracing.propagation.Format.Builtin.TEXT_MAP_INJECT;
 import static io.opentracing.tag.Tags.ERROR;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
 import static org.assertj.core.data.MapEntry.entry;
@@ -110,7 +116,8 @@ public class OpenTracing0_33_BraveTracerTest {
         .tag("lc", "codec")
         .start(1L);
 
-    io.opentracing.Span openTracingSpan = new BraveSpan(brave.tracer(), braveSpan);
+    io.opentracing.Span openTracingSpan =
+        new BraveSpan(brave, LogFieldsFormatter.DEFAULT, new BraveTracerMetrics(), braveSpan);
 
     openTracingSpan.log(2L, "pump fake");
     openTracingSpan.finish(3L);
@@ -268,6 +275,41 @@ public class OpenTracing0_33_BraveTracerTest {
         .isEqualTo(context);
   }
 
+  @Test public void binaryFormat_compactWithBaggage() {
+    BraveTracer compact = BraveTracer.newBuilder(brave)
+        .binaryPropagation(Format.Builtin.BINARY)
+        .build();
+    BraveSpan span = compact.buildSpan("producer").start();
+    span.setBaggageItem(countryCodeField.name(), "FO");
+    span.setBaggageItem(userIdField.name(), "bob");
+    ByteBuffer buffer = ByteBuffer.allocate(128);
+
+    compact.inject(span.context(), BINARY_INJECT, injectionCarrier(buffer));
+    buffer.flip();
+
+    BraveSpanContext extracted = compact.extract(BINARY_EXTRACT, extractionCarrier(buffer));
+    assertThat(extracted.unwrap()).isEqualTo(span.context().unwrap());
+    assertThat(countryCodeField.getValue(extracted.unwrap())).isEqualTo("FO");
+    assertThat(userIdField.getValue(extracted.unwrap())).isEqualTo("bob");
+
+    span.finish();
+  }
+
+  @Test public void binaryFormat_unconfiguredFormatUsesB3() {
+    BraveTracer compact = BraveTracer.newBuilder(brave)
+        .binaryPropagation(Format.Builtin.BINARY)
+        .build();
+    ByteBuffer buffer = ByteBuffer.allocate(128);
+
+    Format<BinaryInject> B3_BINARY = new Format<BinaryInject>() {
+    };
+    compact.inject(BraveSpanContext.create(context), B3_BINARY, injectionCarrier(buffer));
+    buffer.flip();
+
+    assertThat(new String(buffer.array(), 0, buffer.limit(), UTF_8))
+        .isEqualTo("0000000000000001-0000000000000002-1");
+  }
+
   void checkSpanReportedToZipkin() {
     assertThat(spans).first().satisfies(s -> {
           assertThat(s.name()).isEqualTo("encode");
@@ -364,7 +406,8 @@ public class OpenTracing0_33_BraveTracerTest {
     BraveSpan spanA = opentracing.buildSpan("spanA").start();
     try (Scope scopeA = opentracing.activateSpan(spanA)) {
       assertThat(opentracing.activeSpan())
-          .isNotEqualTo(opentracing.scopeManager().activeSpan());
+          .isSameAs(opentracing.scopeManager().activeSpan())
+          .isSameAs(spanA);
     }
   }
 
@@ -428,6 +471,41 @@ public class OpenTracing0_33_BraveTracerTest {
     assertThat(opentracing.extract(Format.Builtin.HTTP_HEADERS, request)).isNull();
   }
 
+  @Test public void extract_null_on_unrelated() {
+    Map<String, String> map = new LinkedHashMap<>();
+    map.put("Content-Type", "application/json");
+    TextMapAdapter request = new TextMapAdapter(map);
+
+    assertThat(opentracing.extract(Format.Builtin.HTTP_HEADERS, request)).isNull();
+  }
+
+  @Test public void extract_null_on_malformed() {
+    Map<String, String> map = new LinkedHashMap<>();
+    map.put("X-B3-TraceId", "cafebabe-is-not-hex");
+    map.put("X-B3-SpanId", "0000000000000002");
+    TextMapAdapter request = new TextMapAdapter(map);
+
+    assertThat(opentracing.extract(Format.Builtin.HTTP_HEADERS, request)).isNull();
+  }
+
+  /** Extraction stops once all keys are found, so a later duplicate is never read. */
+  @Test public void extract_duplicateKey_firstWins() {
+    Map<String, String> map = new LinkedHashMap<>();
+    map.put("X-B3-TraceId", "0000000000000001");
+    map.put("X-B3-SpanId", "0000000000000002");
+    map.put("x-b3-spanid", "0000000000000003");
+    TextMapAdapter request = new TextMapAdapter(map);
+
+    assertThat(opentracing.extract(Format.Builtin.HTTP_HEADERS, request).toSpanId())
+        .isEqualTo("0000000000000002");
+  }
+
+  @Test public void extract_null_on_malformed_binary() {
+    ByteBuffer buffer = ByteBuffer.wrap("cafebabe-is-not-hex".getBytes(UTF_8));
+
+    assertThat(opentracing.extract(BINARY_EXTRACT, extractionCarrier(buffer))).isNull();
+  }
+
   @Test public void extract_only_baggage() {
     Map<String, String> map = new LinkedHashMap<>();
     map.put(countryCodeField.name(), "NO");
@@ -440,4 +518,151 @@ public class OpenTracing0_33_BraveTracerTest {
     assertThat(span.getBaggageItem(countryCodeField.name())).isEqualTo("NO");
     span.finish();
   }
+
+  @Test public void startAndInject_siblingsOfActiveSpan() {
+    BraveSpan parent = opentracing.buildSpan("scatter").start();
+    List<Map<String, String>> maps = Arrays.asList(
+        new LinkedHashMap<>(), new LinkedHashMap<>(), new LinkedHashMap<>());
+    List<TextMapAdapter> carriers = new ArrayList<>();
+    for (Map<String, String> map : maps) carriers.add(new TextMapAdapter(map));
+
+    List<BraveSpan> siblings;
+    try (Scope scope = opentracing.activateSpan(parent)) {
+      siblings = opentracing.startAndInject(opentracing.buildSpan("gather")
+          .withTag("lc", "codec")
+          .withTag(Tags.PEER_SERVICE, "backend"), HTTP_HEADERS, carriers);
+    }
+    for (int i = 0; i < siblings.size(); i++) {
+      assertThat(maps.get(i))
+          .containsEntry("X-B3-TraceId", parent.context().toTraceId())
+          .containsEntry("X-B3-SpanId", siblings.get(i).context().toSpanId())
+          .containsEntry("X-B3-ParentSpanId", parent.context().toSpanId());
+      siblings.get(i).finish();
+    }
+    parent.finish();
+
+    assertThat(spans).hasSize(4);
+    assertThat(spans.spans().subList(0, 3)).allSatisfy(span -> {
+      assertThat(span.parentId()).isEqualTo(parent.context().toSpanId());
+      assertThat(span.kind()).isEqualTo(Span.Kind.CLIENT);
+      assertThat(span.name()).isEqualTo("gather");
+      assertThat(span.remoteServiceName()).isEqualTo("backend");
+      assertThat(span.tags()).containsOnly(entry("lc", "codec"));
+    });
+    assertThat(siblings).extracting(s -> s.context().toSpanId()).doesNotHaveDuplicates();
+  }
+
+  @Test public void startAndInject_binary() {
+    ByteBuffer first = ByteBuffer.allocate(128), second = ByteBuffer.allocate(128);
+
+    List<BraveSpan> siblings = opentracing.startAndInject(opentracing.buildSpan("gather"),
+        BINARY_INJECT, Arrays.asList(injectionCarrier(first), injectionCarrier(second)));
+
+    first.flip();
+    second.flip();
+    assertThat(opentracing.extract(BINARY_EXTRACT, extractionCarrier(first)).unwrap())
+        .isEqualTo(siblings.get(0).unwrap().context());
+    assertThat(opentracing.extract(BINARY_EXTRACT, extractionCarrier(second)).unwrap())
+        .isEqualTo(siblings.get(1).unwrap().context());
+    assertThat(opentracing.metrics().injections(BINARY_INJECT)).isEqualTo(2);
+  }
+
+  @Test public void startAndInject_noParent_newTraces() {
+    List<BraveSpan> siblings = opentracing.startAndInject(opentracing.buildSpan("gather"),
+        HTTP_HEADERS, Arrays.asList(new TextMapAdapter(new LinkedHashMap<>()),
+            new TextMapAdapter(new LinkedHashMap<>())));
+
+    assertThat(siblings.get(0).context().toTraceId())
+        .isNotEqualTo(siblings.get(1).context().toTraceId());
+  }
+
+  @Test public void startAndInject_numberTagFormattedOnce() {
+    OpenTracing0_33_BraveSpanTest.ToStringCounter value =
+        new OpenTracing0_33_BraveSpanTest.ToStringCounter();
+
+    List<BraveSpan> siblings = opentracing.startAndInject(
+        opentracing.buildSpan("gather").withTag("shards", value), HTTP_HEADERS,
+        Arrays.asList(new TextMapAdapter(new LinkedHashMap<>()),
+            new TextMapAdapter(new LinkedHashMap<>())));
+    for (BraveSpan sibling : siblings) sibling.finish();
+
+    assertThat(value.toStringCount).isEqualTo(1);
+    assertThat(spans.spans()).allSatisfy(span ->
+        assertThat(span.tags()).containsOnly(entry("shards", "1")));
+  }
+
+  @Test public void startAndInject_numberTagNotFormattedWhenUnsampled() {
+    BraveSpan parent = opentracing.buildSpan("scatter")
+        .withTag(Tags.SAMPLING_PRIORITY.getKey(), 0).start();
+    OpenTracing0_33_BraveSpanTest.ToStringCounter value =
+        new OpenTracing0_33_BraveSpanTest.ToStringCounter();
+
+    opentracing.startAndInject(
+        opentracing.buildSpan("gather").asChildOf(parent).withTag("shards", value), HTTP_HEADERS,
+        Collections.singletonList(new TextMapAdapter(new LinkedHashMap<>())));
+
+    assertThat(value.toStringCount).isZero();
+  }
+
+  @Test public void startAndInject_noCarriers() {
+    assertThat(opentracing.startAndInject(opentracing.buildSpan("gather"), HTTP_HEADERS,
+        Collections.<TextMap>emptyList())).isEmpty();
+    assertThat(opentracing.metrics().getSpansStarted()).isZero();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void startAndInject_server() {
+    opentracing.startAndInject(
+        opentracing.buildSpan("gather").withTag(Tags.SPAN_KIND, Tags.SPAN_KIND_SERVER),
+        HTTP_HEADERS, Collections.singletonList(new TextMapAdapter(new LinkedHashMap<>())));
+  }
+
+  @Test public void extractAll() {
+    Map<String, String> withContext = new LinkedHashMap<>();
+    withContext.put("X-B3-TraceId", "0000000000000001");
+    withContext.put("X-B3-SpanId", "0000000000000002");
+    withContext.put(countryCodeField.name(), "FO");
+    Map<String, String> withoutBaggage = new LinkedHashMap<>();
+    withoutBaggage.put("X-B3-TraceId", "0000000000000003");
+    withoutBaggage.put("X-B3-SpanId", "0000000000000004");
+    Map<String, String> unrelated = new LinkedHashMap<>();
+    unrelated.put("Content-Type", "application/json");
+
+    List<BraveSpanContext> contexts = opentracing.extractAll(HTTP_HEADERS, Arrays.asList(
+        new TextMapAdapter(withContext), new TextMapAdapter(unrelated),
+        new TextMapAdapter(withoutBaggage)));
+
+    assertThat(contexts).hasSize(3);
+    assertThat(contexts.get(0).toSpanId()).isEqualTo("0000000000000002");
+    assertThat(countryCodeField.getValue(contexts.get(0).unwrap())).isEqualTo("FO");
+    assertThat(contexts.get(1)).isNull();
+    assertThat(contexts.get(2).toSpanId()).isEqualTo("0000000000000004");
+    // values of the previous carrier aren't carried over
+    assertThat(countryCodeField.getValue(contexts.get(2).unwrap())).isNull();
+    assertThat(opentracing.metrics().extractions(HTTP_HEADERS)).isEqualTo(3);
+    assertThat(opentracing.metrics().getExtractionMisses()).isEqualTo(1);
+  }
+
+  @Test public void extractAll_binary() {
+    ByteBuffer buffer = ByteBuffer.allocate(128);
+    opentracing.inject(BraveSpanContext.create(context), BINARY_INJECT, injectionCarrier(buffer));
+    buffer.flip();
+
+    List<BraveSpanContext> contexts = opentracing.extractAll(BINARY_EXTRACT, Arrays.asList(
+        extractionCarrier(buffer), extractionCarrier(ByteBuffer.allocate(0))));
+
+    assertThat(contexts.get(0).unwrap()).isEqualTo(context);
+    assertThat(contexts.get(1)).isNull();
+  }
+
+  /** Iterables that aren't collections have no size, so the result grows as needed. */
+  @Test public void extractAll_iterable() {
+    Map<String, String> map = new LinkedHashMap<>();
+    map.put("b3", "0000000000000001-0000000000000002-1");
+    Iterable<TextMapAdapter> carriers = Collections.nCopies(20, new TextMapAdapter(map))::iterator;
+
+    List<BraveSpanContext> contexts = opentracing.extractAll(HTTP_HEADERS, carriers);
+
+    assertThat(contexts).hasSize(20).doesNotContainNull();
+  }
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.opentracing;
+
+import brave.Tracing;
+import brave.opentracing.BraveTracer.OpenTracingApiVersion;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class OpenTracingVersionTest {
+  static final String DETECTED = OpenTracingVersion.Detected.class.getName();
+
+  @Test public void explicitVersion() {
+    try (Tracing brave = Tracing.newBuilder().build()) {
+      assertThat(BraveTracer.newBuilder(brave)
+          .openTracingApiVersion(OpenTracingApiVersion.V0_32).build().version)
+          .isInstanceOf(OpenTracingVersion.v0_32.class);
+      assertThat(BraveTracer.newBuilder(brave)
+          .openTracingApiVersion(OpenTracingApiVersion.V0_33).build().version)
+          .isInstanceOf(OpenTracingVersion.v0_33.class);
+    }
+  }
+
+  @Test public void explicitVersion_null() {
+    try (Tracing brave = Tracing.newBuilder().build()) {
+      assertThatThrownBy(() -> BraveTracer.newBuilder(brave).openTracingApiVersion(null))
+          .isInstanceOf(NullPointerException.class);
+    }
+  }
+
+  /**
+   * Checks the reflective detection isn't initialized when the version is explicit. This looks at
+   * the classes loaded instead of timing startup, as timing is unreliable in a test.
+   */
+  @Test public void explicitVersion_skipsDetection() throws Exception {
+    IsolatedClassLoader explicit = new IsolatedClassLoader();
+    explicit.run(ExplicitVersion.class);
+    IsolatedClassLoader detected = new IsolatedClassLoader();
+    detected.run(DetectedVersion.class);
+
+    assertThat(detected.loaded).contains(DETECTED);
+    assertThat(explicit.loaded).doesNotContain(DETECTED);
+  }
+
+  public static final class ExplicitVersion implements Runnable {
+    @Override public void run() {
+      try (Tracing brave = Tracing.newBuilder().build()) {
+        BraveTracer.newBuilder(brave).openTracingApiVersion(OpenTracingApiVersion.V0_32).build()
+            .buildSpan("foo").start().finish();
+      }
+    }
+  }
+
+  public static final class DetectedVersion implements Runnable {
+    @Override public void run() {
+      try (Tracing brave = Tracing.newBuilder().build()) {
+        BraveTracer.create(brave).buildSpan("foo").start().finish();
+      }
+    }
+  }
+
+  /** Defines classes in this package anew, so that their static initializers run again. */
+  static final class IsolatedClassLoader extends ClassLoader {
+    final List<String> loaded = new CopyOnWriteArrayList<>();
+
+    IsolatedClassLoader() {
+      super(OpenTracingVersionTest.class.getClassLoader());
+    }
+
+    void run(Class<? extends Runnable> type) throws Exception {
+      ((Runnable) loadClass(type.getName()).newInstance()).run();
+    }
+
+    @Override protected synchronized Class<?> loadClass(String name, boolean resolve)
+        throws ClassNotFoundException {
+      if (!name.startsWith("brave.opentracing.")) return super.loadClass(name, resolve);
+      Class<?> result = findLoadedClass(name);
+      if (result == null) {
+        byte[] bytes = read(name.replace('.', '/') + ".class");
+        result = defineClass(name, bytes, 0, bytes.length);
+        loaded.add(name);
+      }
+      if (resolve) resolveClass(result);
+      return result;
+    }
+
+    byte[] read(String resource) throws ClassNotFoundException {
+      try (InputStream in = getParent().getResourceAsStream(resource)) {
+        if (in == null) throw new ClassNotFoundException(resource);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int read; (read = in.read(buffer)) != -1; ) out.write(buffer, 0, read);
+        return out.toByteArray();
+      } catch (IOException e) {
+        throw new ClassNotFoundException(resource, e);
+      }
+    }
+  }
+}
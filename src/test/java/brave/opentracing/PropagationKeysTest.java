@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016-2020 The OpenZipkin Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package brave.opentracing;
+
+import brave.opentracing.TextMapPropagation.PropagationKeys;
+import java.util.Arrays;
+import java.util.Locale;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PropagationKeysTest {
+  PropagationKeys keys = PropagationKeys.create(
+      Arrays.asList("X-B3-TraceId", "x-b3-spanid", "x-b3-sampled", "b3", "x-b3-traceid"));
+
+  @Test public void create_lowercasesAndDeduplicates() {
+    assertThat(keys.names)
+        .containsExactly("x-b3-traceid", "x-b3-spanid", "x-b3-sampled", "b3");
+  }
+
+  @Test public void indexOf_ignoresCase() {
+    assertThat(keys.indexOf("x-b3-traceid")).isZero();
+    assertThat(keys.indexOf("X-B3-TraceId")).isZero();
+    assertThat(keys.indexOf("X-B3-SPANID")).isEqualTo(1);
+    assertThat(keys.indexOf("x-b3-SaMpLeD")).isEqualTo(2);
+    assertThat(keys.indexOf("B3")).isEqualTo(3);
+  }
+
+  @Test public void indexOf_unrelated() {
+    assertThat(keys.indexOf("")).isEqualTo(-1);
+    assertThat(keys.indexOf("b4")).isEqualTo(-1);
+    assertThat(keys.indexOf("x-b3-flags")).isEqualTo(-1);
+    assertThat(keys.indexOf("content-type")).isEqualTo(-1);
+    assertThat(keys.indexOf("x-b3-traceid-but-much-longer-than-any-propagation-key-we-know-of"))
+        .isEqualTo(-1);
+  }
+
+  @Test public void get_readsValueAtIndex() {
+    String[] values = {"0000000000000001", "0000000000000002", null, null};
+
+    assertThat(keys.get(values, "x-b3-traceid")).isEqualTo("0000000000000001");
+    assertThat(keys.get(values, "x-b3-spanid")).isEqualTo("0000000000000002");
+    assertThat(keys.get(values, "x-b3-sampled")).isNull();
+    assertThat(keys.get(values, "other")).isNull();
+  }
+
+  @Test public void lowerCaseHash_sameAsLowerCaseStringForAscii() {
+    for (String key : Arrays.asList("X-B3-TraceId", "Content-Type", "b3", "")) {
+      int h = key.toLowerCase(Locale.ROOT).hashCode();
+      assertThat(PropagationKeys.lowerCaseHash(key)).isEqualTo(h ^ (h >>> 16));
+    }
+  }
+}